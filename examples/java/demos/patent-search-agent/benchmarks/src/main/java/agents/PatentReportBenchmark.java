@@ -0,0 +1,93 @@
+/*
+ * Copyright 2025 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package agents;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Splitting search reports into patents and looking a patent up for {@code explainPatent}, for
+ * result sets of growing size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PatentReportBenchmark {
+
+  @Param({"10", "100", "1000"})
+  int results;
+
+  String report;
+  String lastId;
+  Map<String, Object> indexedState;
+  Map<String, Object> textOnlyState;
+
+  @Setup
+  public void setUp() {
+    report = sampleReport(results);
+    lastId = "US-" + (results - 1) + "-A1";
+    indexedState = Map.of("patents", report, App.PATENTS_BY_ID_KEY, App.indexPatents(report));
+    textOnlyState = Map.of("patents", report);
+  }
+
+  @Benchmark
+  public Map<String, String> indexPatents() {
+    return App.indexPatents(report);
+  }
+
+  /** Lookup in the index the search tool stores in session state. */
+  @Benchmark
+  public String explainLookup() {
+    return App.patentsById(indexedState).get(lastId);
+  }
+
+  /** Lookup in sessions that only hold the raw report, which is indexed on every call. */
+  @Benchmark
+  public String explainLookupFromText() {
+    return App.patentsById(textOnlyState).get(lastId);
+  }
+
+  /** A report in the format produced by the PatentSearch function. */
+  static String sampleReport(int results) {
+    StringBuilder report = new StringBuilder("Here is the list of matching patents: ");
+    for (int i = 0; i < results; i++) {
+      report
+          .append("\n\n\n\n Title: US-")
+          .append(i)
+          .append("-A1 - Method and system for machine learning model ")
+          .append(i)
+          .append(". Abstract: A neural network is trained on labelled examples to classify")
+          .append(" natural language input, reducing the amount of annotated data needed. ")
+          .append("The trained model is deployed to edge devices for low latency inference.");
+    }
+    return report.toString();
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2025 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package agents;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link App#vectorSearch} against a local stub of the PatentSearch function that answers every
+ * search immediately with a canned report, so only the client side (request encoding, the shared
+ * HTTP client and response decoding) is measured. The stub is the JDK {@code HttpServer}, which
+ * leaves Nagle's algorithm on unless {@code sun.net.httpserver.nodelay} is set; the forked JVM sets
+ * it so the stub's delayed ACKs do not add tens of milliseconds to every call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+@State(Scope.Benchmark)
+public class VectorSearchClientBenchmark {
+
+  @Param({"10", "100"})
+  int results;
+
+  private HttpServer server;
+  private ExecutorService serverExecutor;
+
+  @Setup
+  public void setUp() throws IOException {
+    byte[] report = PatentReportBenchmark.sampleReport(results).getBytes(StandardCharsets.UTF_8);
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext(
+        "/",
+        exchange -> {
+          try (InputStream body = exchange.getRequestBody();
+              OutputStream out = exchange.getResponseBody()) {
+            body.readAllBytes();
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, report.length);
+            out.write(report);
+          }
+        });
+    serverExecutor = Executors.newFixedThreadPool(8);
+    server.setExecutor(serverExecutor);
+    server.start();
+    App.VECTOR_SEARCH_ENDPOINT = "http://localhost:" + server.getAddress().getPort() + "/";
+  }
+
+  @TearDown
+  public void tearDown() {
+    server.stop(0);
+    serverExecutor.shutdownNow();
+  }
+
+  @Benchmark
+  public String vectorSearch() throws Exception {
+    return App.vectorSearch("A new Natural Language Processing related Machine Learning Model");
+  }
+
+  /** Concurrent searches sharing the client's connections. */
+  @Benchmark
+  @Threads(8)
+  public String vectorSearchConcurrent() throws Exception {
+    return App.vectorSearch("A new Natural Language Processing related Machine Learning Model");
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2025 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package gcfv2;
+
+import com.google.cloud.functions.HttpRequest;
+import com.google.cloud.functions.HttpResponse;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.Optional;
+
+/** Minimal in-memory requests and responses for calling {@link PatentSearch#service}. */
+final class FakeHttp {
+
+  private FakeHttp() {}
+
+  static HttpRequest post(String json) {
+    return (HttpRequest)
+        Proxy.newProxyInstance(
+            FakeHttp.class.getClassLoader(),
+            new Class<?>[] {HttpRequest.class},
+            (proxy, method, args) -> {
+              switch (method.getName()) {
+                case "getMethod":
+                  return "POST";
+                case "getPath":
+                  return "/";
+                case "getReader":
+                  return new BufferedReader(new StringReader(json));
+                case "getContentType":
+                  return Optional.of("application/json");
+                case "getHeaders":
+                case "getQueryParameters":
+                  return Map.of();
+                default:
+                  throw new UnsupportedOperationException("HttpRequest." + method.getName());
+              }
+            });
+  }
+
+  /** Collects whatever the function writes. */
+  static final class Response {
+    private final StringWriter body = new StringWriter();
+    private final BufferedWriter writer = new BufferedWriter(body);
+    final HttpResponse response =
+        (HttpResponse)
+            Proxy.newProxyInstance(
+                FakeHttp.class.getClassLoader(),
+                new Class<?>[] {HttpResponse.class},
+                (proxy, method, args) -> {
+                  switch (method.getName()) {
+                    case "getWriter":
+                      return writer;
+                    case "setContentType":
+                    case "setStatusCode":
+                    case "appendHeader":
+                      return null;
+                    default:
+                      throw new UnsupportedOperationException("HttpResponse." + method.getName());
+                  }
+                });
+
+    String body() throws java.io.IOException {
+      writer.flush();
+      return body.toString();
+    }
+
+    BufferedWriter writer() {
+      return writer;
+    }
+  }
+}
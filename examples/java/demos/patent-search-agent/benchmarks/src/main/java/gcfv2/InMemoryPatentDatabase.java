@@ -0,0 +1,351 @@
+/*
+ * Copyright 2025 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package gcfv2;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+/**
+ * In-memory stand-in for the {@code patents_data} table that answers the statements issued by
+ * {@link PatentSearch}.
+ *
+ * <p>Patents get random unit embeddings and searches are exact (brute force) cosine distance
+ * scans, so results match what pgvector returns without an index. {@code embedding()} is emulated
+ * with a vector derived from the hash of the text. Only the JDBC calls the function makes are
+ * implemented; anything else fails with {@link SQLFeatureNotSupportedException}, except for the
+ * connection setup calls made by the pool, which are accepted and ignored.
+ */
+final class InMemoryPatentDatabase implements DataSource {
+
+  private final int dimension;
+  private final String[] ids;
+  private final String[] titles;
+  private final String[] abstracts;
+  private final float[][] embeddings;
+
+  InMemoryPatentDatabase(int patents, int dimension, long seed) {
+    this.dimension = dimension;
+    this.ids = new String[patents];
+    this.titles = new String[patents];
+    this.abstracts = new String[patents];
+    this.embeddings = new float[patents][];
+    Random random = new Random(seed);
+    for (int i = 0; i < patents; i++) {
+      ids[i] = "US-" + i + "-A1";
+      titles[i] = "Method and system for machine learning model " + i;
+      abstracts[i] =
+          "A neural network is trained on labelled examples to classify natural language input,"
+              + " reducing the amount of annotated data needed. The trained model is deployed to"
+              + " edge devices for low latency inference.";
+      embeddings[i] = randomUnitVector(random, dimension);
+    }
+  }
+
+  /** Rows {@code id, title, abstract} for the first {@code count} patents. */
+  ResultSet rows(int count) {
+    List<Object[]> rows = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      rows.add(new Object[] {ids[i], titles[i], abstracts[i]});
+    }
+    return resultSet(new String[] {"id", "title", "abstract"}, rows);
+  }
+
+  @Override
+  public Connection getConnection() {
+    return proxy(Connection.class, new ConnectionHandler());
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) {
+    return getConnection();
+  }
+
+  @Override
+  public PrintWriter getLogWriter() {
+    return null;
+  }
+
+  @Override
+  public void setLogWriter(PrintWriter out) {}
+
+  @Override
+  public void setLoginTimeout(int seconds) {}
+
+  @Override
+  public int getLoginTimeout() {
+    return 0;
+  }
+
+  @Override
+  public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+    throw new SQLFeatureNotSupportedException();
+  }
+
+  @Override
+  public <T> T unwrap(Class<T> type) throws SQLException {
+    throw new SQLException("Not a wrapper for " + type);
+  }
+
+  @Override
+  public boolean isWrapperFor(Class<?> type) {
+    return false;
+  }
+
+  private final class ConnectionHandler implements InvocationHandler {
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws SQLException {
+      switch (method.getName()) {
+        case "prepareStatement":
+          return proxy(PreparedStatement.class, new StatementHandler((String) args[0]));
+        case "createArrayOf":
+          return array((Object[]) args[1]);
+        case "isValid":
+          return true;
+        case "isWrapperFor":
+          return false;
+        default:
+          // Transaction, isolation and timeout settings from the pool and the function.
+          return defaultValue(method);
+      }
+    }
+  }
+
+  private final class StatementHandler implements InvocationHandler {
+    private final String sql;
+    private final Map<Integer, Object> parameters = new HashMap<>();
+
+    StatementHandler(String sql) {
+      this.sql = sql;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws SQLException {
+      switch (method.getName()) {
+        case "setString":
+        case "setInt":
+        case "setArray":
+          parameters.put((Integer) args[0], args[1]);
+          return null;
+        case "setFetchSize":
+        case "close":
+          return null;
+        case "execute":
+          // set_config() for the index settings, which have no effect on exact scans.
+          return true;
+        case "executeQuery":
+          return executeQuery();
+        default:
+          throw new SQLFeatureNotSupportedException("PreparedStatement." + method.getName());
+      }
+    }
+
+    private ResultSet executeQuery() throws SQLException {
+      if (sql.equals(PatentSearch.EMBEDDING_SQL)) {
+        Float[] embedding = boxed(embed((String) parameters.get(1)));
+        return resultSet(
+            new String[] {"embedding"}, List.<Object[]>of(new Object[] {array(embedding)}));
+      }
+      if (sql.equals(PatentSearch.BATCH_EMBEDDING_SQL)) {
+        Object[] texts = (Object[]) ((Array) parameters.get(1)).getArray();
+        List<Object[]> rows = new ArrayList<>();
+        for (int t = 0; t < texts.length; t++) {
+          rows.add(new Object[] {t + 1, array(boxed(embed((String) texts[t])))});
+        }
+        return resultSet(new String[] {"ord", "embedding"}, rows);
+      }
+      if (sql.equals(PatentSearch.VECTOR_SEARCH_SQL)) {
+        Object[] values = (Object[]) ((Array) parameters.get(1)).getArray();
+        float[] query = new float[values.length];
+        for (int i = 0; i < values.length; i++) {
+          query[i] = ((Number) values[i]).floatValue();
+        }
+        List<Object[]> rows = new ArrayList<>();
+        for (int row : nearest(query, (Integer) parameters.get(2))) {
+          rows.add(new Object[] {ids[row], titles[row], abstracts[row]});
+        }
+        return resultSet(new String[] {"id", "title", "abstract"}, rows);
+      }
+      if (sql.equals(PatentSearch.BATCH_VECTOR_SEARCH_SQL)) {
+        Object[] literals = (Object[]) ((Array) parameters.get(1)).getArray();
+        List<Object[]> rows = new ArrayList<>();
+        for (int q = 0; q < literals.length; q++) {
+          for (int row : nearest(parseVector((String) literals[q]), (Integer) parameters.get(2))) {
+            rows.add(new Object[] {q + 1, ids[row], titles[row], abstracts[row]});
+          }
+        }
+        return resultSet(new String[] {"ord", "id", "title", "abstract"}, rows);
+      }
+      throw new SQLFeatureNotSupportedException("Unsupported statement: " + sql);
+    }
+  }
+
+  // Row numbers of the limit nearest patents, closest first.
+  private int[] nearest(float[] query, int limit) {
+    PriorityQueue<double[]> best =
+        new PriorityQueue<>((a, b) -> Double.compare(b[0], a[0])); // farthest on top
+    double queryNorm = Math.sqrt(dot(query, query));
+    for (int i = 0; i < embeddings.length; i++) {
+      double distance = 1 - dot(query, embeddings[i]) / queryNorm;
+      if (best.size() < limit) {
+        best.add(new double[] {distance, i});
+      } else if (distance < best.peek()[0]) {
+        best.poll();
+        best.add(new double[] {distance, i});
+      }
+    }
+    int[] rows = new int[best.size()];
+    for (int i = rows.length - 1; i >= 0; i--) {
+      rows[i] = (int) best.poll()[1];
+    }
+    return rows;
+  }
+
+  private float[] embed(String text) {
+    return randomUnitVector(new Random(text.hashCode()), dimension);
+  }
+
+  private static float[] randomUnitVector(Random random, int dimension) {
+    float[] vector = new float[dimension];
+    for (int i = 0; i < dimension; i++) {
+      vector[i] = (float) random.nextGaussian();
+    }
+    double norm = Math.sqrt(dot(vector, vector));
+    for (int i = 0; i < dimension; i++) {
+      vector[i] /= norm;
+    }
+    return vector;
+  }
+
+  private static double dot(float[] a, float[] b) {
+    double sum = 0;
+    for (int i = 0; i < a.length; i++) {
+      sum += a[i] * b[i];
+    }
+    return sum;
+  }
+
+  // Inverse of PatentSearch.toVectorLiteral.
+  private static float[] parseVector(String literal) {
+    String[] components = literal.substring(1, literal.length() - 1).split(",");
+    float[] vector = new float[components.length];
+    for (int i = 0; i < components.length; i++) {
+      vector[i] = Float.parseFloat(components[i]);
+    }
+    return vector;
+  }
+
+  private static Float[] boxed(float[] vector) {
+    Float[] values = new Float[vector.length];
+    for (int i = 0; i < vector.length; i++) {
+      values[i] = vector[i];
+    }
+    return values;
+  }
+
+  private static Array array(Object[] elements) {
+    return proxy(
+        Array.class,
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getArray":
+              return elements;
+            case "free":
+              return null;
+            default:
+              throw new SQLFeatureNotSupportedException("Array." + method.getName());
+          }
+        });
+  }
+
+  private static ResultSet resultSet(String[] columns, List<Object[]> rows) {
+    Map<String, Integer> columnIndex = new HashMap<>();
+    for (int i = 0; i < columns.length; i++) {
+      columnIndex.put(columns[i], i);
+    }
+    int[] position = {-1};
+    return proxy(
+        ResultSet.class,
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "next":
+              return ++position[0] < rows.size();
+            case "getString":
+            case "getInt":
+            case "getArray":
+              Object[] row = rows.get(position[0]);
+              return args[0] instanceof String
+                  ? row[columnIndex.get((String) args[0])]
+                  : row[(Integer) args[0] - 1];
+            case "close":
+              return null;
+            default:
+              throw new SQLFeatureNotSupportedException("ResultSet." + method.getName());
+          }
+        });
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+    return (T)
+        Proxy.newProxyInstance(
+            InMemoryPatentDatabase.class.getClassLoader(),
+            new Class<?>[] {type},
+            (proxy, method, args) -> {
+              if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                  case "equals":
+                    return proxy == args[0];
+                  case "hashCode":
+                    return System.identityHashCode(proxy);
+                  default:
+                    return type.getSimpleName() + "@" + System.identityHashCode(proxy);
+                }
+              }
+              return handler.invoke(proxy, method, args);
+            });
+  }
+
+  private static Object defaultValue(Method method) {
+    Class<?> type = method.getReturnType();
+    if (type == boolean.class) {
+      return false;
+    }
+    if (type == int.class) {
+      return 0;
+    }
+    if (type == long.class) {
+      return 0L;
+    }
+    return null;
+  }
+}
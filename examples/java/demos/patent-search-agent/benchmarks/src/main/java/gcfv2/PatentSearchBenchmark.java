@@ -0,0 +1,137 @@
+/*
+ * Copyright 2025 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package gcfv2;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link PatentSearch#service} end to end against {@link InMemoryPatentDatabase}, plus its
+ * request parsing and response serialization on their own.
+ *
+ * <p>The database scan is exact, so the service benchmarks include a brute force search over
+ * {@code patents} rows; compare the serialization benchmarks to see what the function itself adds.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PatentSearchBenchmark {
+
+  private static final Gson GSON = new Gson();
+  private static final String SEARCH_TEXT =
+      "A new Natural Language Processing related Machine Learning Model";
+
+  @Param({"1000", "10000"})
+  int patents;
+
+  @Param({"10", "100"})
+  int limit;
+
+  private final PatentSearch function = new PatentSearch();
+  private InMemoryPatentDatabase database;
+  private HikariDataSource pool;
+  private String textRequest;
+  private String jsonLinesRequest;
+  private String batchRequest;
+
+  @Setup
+  public void setUp() {
+    database = new InMemoryPatentDatabase(patents, 768, /* seed= */ 42);
+    HikariConfig config = new HikariConfig();
+    config.setPoolName("patent-search-benchmark");
+    config.setDataSource(database);
+    config.setMaximumPoolSize(4);
+    pool = new HikariDataSource(config);
+    PatentSearch.ConnectionPool.useDataSource(pool);
+
+    textRequest = GSON.toJson(Map.of("search", SEARCH_TEXT, "limit", limit));
+    jsonLinesRequest =
+        GSON.toJson(Map.of("search", SEARCH_TEXT, "limit", limit, "format", "jsonl"));
+    List<String> searches = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      searches.add(SEARCH_TEXT + " " + i);
+    }
+    batchRequest = GSON.toJson(Map.of("searches", searches, "limit", limit));
+  }
+
+  @TearDown
+  public void tearDown() {
+    pool.close();
+  }
+
+  @Benchmark
+  public PatentSearch.SearchRequest parseRequest() {
+    return PatentSearch.SearchRequest.fromJson(GSON.fromJson(textRequest, JsonObject.class));
+  }
+
+  @Benchmark
+  public String writeResultsText() throws Exception {
+    FakeHttp.Response response = new FakeHttp.Response();
+    PatentSearch.writeResults(database.rows(limit), false, response.response, response.writer());
+    return response.body();
+  }
+
+  @Benchmark
+  public String writeResultsJsonLines() throws Exception {
+    FakeHttp.Response response = new FakeHttp.Response();
+    PatentSearch.writeResults(database.rows(limit), true, response.response, response.writer());
+    return response.body();
+  }
+
+  @Benchmark
+  public String serviceText() throws Exception {
+    return service(textRequest);
+  }
+
+  @Benchmark
+  public String serviceJsonLines() throws Exception {
+    return service(jsonLinesRequest);
+  }
+
+  /** Eight searches answered by one batched request. */
+  @Benchmark
+  public String serviceBatch() throws Exception {
+    return service(batchRequest);
+  }
+
+  private String service(String json) throws Exception {
+    FakeHttp.Response response = new FakeHttp.Response();
+    function.service(FakeHttp.post(json), response.response);
+    return response.body();
+  }
+}
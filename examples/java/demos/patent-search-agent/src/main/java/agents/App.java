@@ -25,22 +25,29 @@ import com.google.adk.runner.InMemoryRunner;
 import com.google.adk.sessions.Session;
 import com.google.adk.tools.Annotations.Schema;
 import com.google.adk.tools.FunctionTool;
+import com.google.adk.tools.ToolContext;
 import com.google.genai.types.Content;
 import com.google.genai.types.Part;
 import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import java.io.IOException;
+import java.lang.reflect.Method;
 import java.nio.charset.StandardCharsets;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import com.google.gson.Gson;
 import java.util.Scanner;
-import java.io.OutputStream;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
 
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -52,7 +59,7 @@ import java.util.Optional;
 public class App {
 
 
-  static FunctionTool searchTool = FunctionTool.create(App.class, "getPatents");
+  static FunctionTool searchTool = new AsyncSearchTool();
   static FunctionTool explainTool = FunctionTool.create(App.class, "explainPatent");
   
   private static final String APP_NAME = "story_app";
@@ -107,6 +114,9 @@ public class App {
           String userInput = scanner.nextLine();
 
           if ("quit".equalsIgnoreCase(userInput)) {
+            if (RESULT_CACHE != null) {
+              logger.log(Level.INFO, () -> "Patent result cache: " + RESULT_CACHE.stats());
+            }
             break;
           }
           
@@ -129,8 +139,7 @@ public class App {
     @Schema(name="searchText",description = "The search text for which the user wants to find matching patents from the database") 
     String searchText) {
       try{
-        String patents = "";
-        patents = vectorSearch(searchText);
+        String patents = searchPatents(searchText).blockingGet();
         return Map.of(
           "status", "success",
           "report", patents
@@ -143,6 +152,38 @@ public class App {
       }
 }
 
+  // Non-blocking variant of getPatents used by the agent's search tool. Besides returning the
+  // report, it stores the results in session state keyed by patent id for explainPatent.
+  static Single<Map<String, Object>> getPatentsAsync(String searchText, ToolContext toolContext) {
+    return searchPatents(searchText)
+        .map(
+            patents -> {
+              toolContext.state().put(PATENTS_BY_ID_KEY, indexPatents(patents));
+              return Map.<String, Object>of("status", "success", "report", patents);
+            })
+        .onErrorReturnItem(Map.of("status", "error", "report", "None matched your search!!"));
+  }
+
+  // Session state key holding the last search results as a patent id -> entry map.
+  static final String PATENTS_BY_ID_KEY = "patents_by_id";
+
+  // Splits a search report into its "Title: <id> - <title>. Abstract: ..." entries, keyed by the
+  // exact patent id. If an id appears more than once, the first (best ranked) entry is kept.
+  static Map<String, String> indexPatents(String report) {
+    Map<String, String> patentsById = new LinkedHashMap<>();
+    for (String entry : report.split("\n\n\n\n")) {
+      String trimmed = entry.trim();
+      if (!trimmed.startsWith("Title: ")) {
+        continue;
+      }
+      int separator = trimmed.indexOf(" - ", "Title: ".length());
+      if (separator > 0) {
+        patentsById.putIfAbsent(trimmed.substring("Title: ".length(), separator).trim(), entry);
+      }
+    }
+    return patentsById;
+  }
+
 // --- Define the Tool ---
   // Retrieves the explanation for the patent the user's interested in
   public static Map<String, String> explainPatent(
@@ -150,27 +191,16 @@ public class App {
     String patentId, 
     @Schema(name="ctx",description = "The list of patent abstracts from the database from which the user can pick the one to get more explanation for") 
     InvocationContext ctx) {
-    String patent = "";
     try{
-     String previousResults = (String) ctx.session().state().get("patents");
-    
-     System.out.println(previousResults);
-      if(!(previousResults.isEmpty())) {
-        String patents = previousResults;
-        String[] patentIds = patents.split("\n\n\n\n");
-        for(String pId : patentIds){
-          if(pId.contains(patentId)){
-            patent = pId;
-          }
-        }
-        if(patent.isEmpty() || patent.equals("")){
-          return Map.of(
-                        "status", "error",
-                        "report", "Patent ID not found in the previous search results. Please provide a valid patent ID."
-                );
-        }
+      Map<String, Object> state = ctx.session().state();
+      Map<String, String> patentsById = patentsById(state);
+      String patent = patentsById.get(patentId.trim());
+      if (patent == null) {
+        return Map.of(
+                      "status", "error",
+                      "report", "Patent ID not found in the previous search results. Please provide a valid patent ID."
+              );
       }
-     //patent = fetchPatentAbstract(patentId);
      return Map.of(
       "status", "success",
       "report", patent
@@ -183,49 +213,208 @@ public class App {
     }
 }
 
+  // Returns the indexed results of the last search. Sessions that only have the raw 'patents'
+  // text (e.g. results produced before the index was stored) are indexed on the fly.
+  @SuppressWarnings("unchecked")
+  static Map<String, String> patentsById(Map<String, Object> state) {
+    Object indexed = state.get(PATENTS_BY_ID_KEY);
+    if (indexed instanceof Map) {
+      return (Map<String, String>) indexed;
+    }
+    Object previousResults = state.get("patents");
+    return previousResults == null ? Map.of() : indexPatents(previousResults.toString());
+  }
+
+
+// Optional in-process backend: when PATENT_INDEX_DIR points at an index built with
+// LocalPatentIndex, searches are served locally instead of by the PatentSearch function.
+static final LocalPatentIndex LOCAL_INDEX = openLocalIndex();
+static final int LOCAL_INDEX_NPROBE = intEnv("PATENT_INDEX_NPROBE", 4);
+private static QueryEmbedder queryEmbedder;
+
+static LocalPatentIndex openLocalIndex() {
+  String directory = System.getenv("PATENT_INDEX_DIR");
+  if (directory == null || directory.isBlank()) {
+    return null;
+  }
+  try {
+    LocalPatentIndex index = LocalPatentIndex.open(Path.of(directory), 768);
+    int nlist = intEnv("PATENT_INDEX_NLIST", 0);
+    if (nlist > 0) {
+      index.train(nlist, /* iterations= */ 10);
+    }
+    logger.log(Level.INFO, () -> String.format("Loaded %d patents from %s", index.size(), directory));
+    return index;
+  } catch (IOException e) {
+    logger.log(Level.WARNING, "Could not open local patent index, using the search function", e);
+    return null;
+  }
+}
+
+static synchronized QueryEmbedder queryEmbedder() {
+  if (queryEmbedder == null) {
+    queryEmbedder = QueryEmbedder.gemini();
+  }
+  return queryEmbedder;
+}
+
+static String localSearch(String searchText) throws Exception {
+  return localSearch(queryEmbedder().embed(searchText));
+}
+
+static String localSearch(float[] query) {
+  return LocalPatentIndex.format(LOCAL_INDEX.search(query, 10, LOCAL_INDEX_NPROBE));
+}
+
+// Optional cache in front of both backends: when PATENT_RESULT_CACHE_MAX_DISTANCE is set, a
+// search whose embedding is within that cosine distance of an earlier one reuses its results.
+static final SemanticResultCache RESULT_CACHE = createResultCache();
+
+static SemanticResultCache createResultCache() {
+  String maxDistance = System.getenv("PATENT_RESULT_CACHE_MAX_DISTANCE");
+  if (maxDistance == null || maxDistance.isBlank()) {
+    return null;
+  }
+  return new SemanticResultCache(
+      Double.parseDouble(maxDistance.trim()),
+      intEnv("PATENT_RESULT_CACHE_MAX_MB", 16) * 1024L * 1024L,
+      Duration.ofMinutes(intEnv("PATENT_RESULT_CACHE_TTL_MINUTES", 60)));
+}
+
+// Runs a search on the configured backend, going through the result cache when it is enabled.
+// If the search text cannot be embedded the search runs uncached.
+static Single<String> searchPatents(String searchText) {
+  if (RESULT_CACHE == null) {
+    return Single.defer(
+        () ->
+            LOCAL_INDEX != null
+                ? Single.fromCallable(() -> localSearch(searchText)).subscribeOn(Schedulers.io())
+                : vectorSearchAsync(searchText, SEARCH_TIMEOUT));
+  }
+  return Single.fromCallable(() -> queryEmbedder().embed(searchText))
+      .subscribeOn(Schedulers.io())
+      .onErrorReturn(
+          e -> {
+            logger.log(Level.WARNING, "Could not embed search text, searching uncached", e);
+            return new float[0];
+          })
+      .flatMap(
+          query -> {
+            String cached = query.length == 0 ? null : RESULT_CACHE.get(query);
+            logger.log(Level.FINE, () -> "Patent result cache: " + RESULT_CACHE.stats());
+            if (cached != null) {
+              return Single.just(cached);
+            }
+            long start = System.nanoTime();
+            Single<String> search =
+                LOCAL_INDEX != null
+                    ? Single.fromCallable(
+                        () -> query.length == 0 ? localSearch(searchText) : localSearch(query))
+                    : vectorSearchAsync(searchText, SEARCH_TIMEOUT);
+            return search.doOnSuccess(
+                patents -> {
+                  // Failed remote searches come back empty and must not be cached.
+                  if (query.length > 0 && !patents.isEmpty()) {
+                    RESULT_CACHE.put(query, patents, System.nanoTime() - start);
+                  }
+                });
+          });
+}
+
+static int intEnv(String name, int defaultValue) {
+  String value = System.getenv(name);
+  return value == null || value.isBlank() ? defaultValue : Integer.parseInt(value.trim());
+}
+
+// Shared across all tool calls so connections (and HTTP/2 streams) to the search function are
+// reused instead of being set up again for every search.
+static final HttpClient HTTP_CLIENT =
+    HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_2)
+        .connectTimeout(Duration.ofSeconds(10))
+        .build();
+static final Duration SEARCH_TIMEOUT = Duration.ofSeconds(60);
+private static final Gson GSON = new Gson();
+
+// Coalesces concurrent searches into one request when SEARCH_BATCH_MAX_SIZE is greater than 1.
+static final SearchBatcher SEARCH_BATCHER = createSearchBatcher();
+
+static SearchBatcher createSearchBatcher() {
+  int maxBatchSize = intEnv("SEARCH_BATCH_MAX_SIZE", 1);
+  if (maxBatchSize <= 1) {
+    return null;
+  }
+  return new SearchBatcher(
+      HTTP_CLIENT,
+      URI.create(VECTOR_SEARCH_ENDPOINT),
+      // The search function accepts at most 64 searches per request.
+      Math.min(maxBatchSize, 64),
+      Duration.ofMillis(intEnv("SEARCH_BATCH_MAX_WAIT_MS", 10)),
+      SEARCH_TIMEOUT);
+}
 
 public static String vectorSearch(String searchText) throws Exception{
-  String patents = "";
-  String endpoint = VECTOR_SEARCH_ENDPOINT;
-   try{
-      URL url = new URL(endpoint);
-      HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-      conn.setRequestMethod("POST");
-      conn.setRequestProperty("Content-Type", "application/json");
-      conn.setDoOutput(true);
-
-      // Create JSON payload
-      Gson gson = new Gson();
-      Map<String, String> data = new HashMap<>();
-      data.put("search", searchText);
-      String jsonInputString = gson.toJson(data);
-      
-      try (OutputStream os = conn.getOutputStream()) {
-        byte[] input = jsonInputString.getBytes("utf-8");
-        os.write(input, 0, input.length);
-      }
-      int responseCode = conn.getResponseCode();
-
-      if (responseCode == HttpURLConnection.HTTP_OK) {
-        BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-        String inputLine;
-        StringBuilder response = new StringBuilder();
-
-        while ((inputLine = in.readLine()) != null) {
-          response.append(inputLine);
-        }
-        in.close();
-        patents = response.toString();
-        System.out.println("POST request worked! " + patents);
-      } else {
-        System.out.println("POST request did not work!");
-      }
-   } catch (Exception e) {
-    System.out.println(e);
+  return vectorSearchAsync(searchText, SEARCH_TIMEOUT).blockingGet();
+}
+
+// Sends the search without blocking the caller; the response body is collected as bytes by the
+// HTTP client and decoded once. Errors and non-200 responses complete with an empty result.
+public static Single<String> vectorSearchAsync(String searchText, Duration timeout) {
+  if (SEARCH_BATCHER != null) {
+    return Single.fromCompletionStage(SEARCH_BATCHER.submit(searchText))
+        .onErrorReturn(
+            e -> {
+              logger.log(Level.WARNING, "Patent search failed", e);
+              return "";
+            });
   }
-  return patents;
+  HttpRequest request =
+      HttpRequest.newBuilder(URI.create(VECTOR_SEARCH_ENDPOINT))
+          .timeout(timeout)
+          .header("Content-Type", "application/json")
+          .POST(HttpRequest.BodyPublishers.ofString(GSON.toJson(Map.of("search", searchText))))
+          .build();
+  return Single.fromCompletionStage(
+          HTTP_CLIENT.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray()))
+      .map(
+          response -> {
+            if (response.statusCode() != 200) {
+              logger.log(
+                  Level.WARNING,
+                  () -> String.format("POST request did not work! Status: %d", response.statusCode()));
+              return "";
+            }
+            String patents = new String(response.body(), StandardCharsets.UTF_8);
+            logger.log(Level.FINE, () -> "POST request worked! " + patents);
+            return patents;
+          })
+      .onErrorReturn(
+          e -> {
+            logger.log(Level.WARNING, "Patent search failed", e);
+            return "";
+          });
 }
 
+// Exposes getPatents to the agent with the declaration generated from the method, but runs it
+// on the asynchronous HTTP client so the agent's event pipeline is never blocked on the search.
+static final class AsyncSearchTool extends FunctionTool {
+  AsyncSearchTool() {
+    super(getPatentsMethod(), /* isLongRunning= */ false);
+  }
+
+  private static Method getPatentsMethod() {
+    try {
+      return App.class.getMethod("getPatents", String.class);
+    } catch (NoSuchMethodException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public Single<Map<String, Object>> runAsync(Map<String, Object> args, ToolContext toolContext) {
+    return getPatentsAsync((String) args.get("searchText"), toolContext);
+  }
+}
 
 }
 
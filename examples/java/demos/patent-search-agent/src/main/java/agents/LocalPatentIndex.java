@@ -0,0 +1,559 @@
+/*
+ * Copyright 2025 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package agents;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-process IVF-flat vector index over patent abstracts.
+ *
+ * <p>Serves the same top-k cosine similarity search as the {@code PatentSearch} Cloud Run
+ * Function without a database round trip, for offline and latency-critical deployments. An index
+ * directory holds two files:
+ *
+ * <ul>
+ *   <li>{@code vectors.f32}: a small header followed by the abstract embeddings as little-endian
+ *       floats, accessed through a memory mapping so the vectors stay off the Java heap.
+ *   <li>{@code patents.jsonl}: one {@code {"id", "title", "abstract"}} object per row, in the same
+ *       order as the vectors.
+ * </ul>
+ *
+ * <p>Rows can be appended at any time with {@link #add}. Once {@link #train} has clustered the
+ * vectors, searches only scan the {@code nprobe} closest clusters; before that they scan every
+ * row.
+ */
+public final class LocalPatentIndex implements AutoCloseable {
+
+  static final String VECTORS_FILE = "vectors.f32";
+  static final String PATENTS_FILE = "patents.jsonl";
+
+  // Header: magic, dimension, row count, reserved.
+  private static final int MAGIC = 0x50415456; // "PATV"
+  private static final int HEADER_BYTES = 4 * Integer.BYTES;
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private static final Gson GSON = new Gson();
+
+  /** A single search result. */
+  public static final class Hit {
+    public final String id;
+    public final String title;
+    public final String abstractText;
+    public final float distance;
+
+    Hit(String id, String title, String abstractText, float distance) {
+      this.id = id;
+      this.title = title;
+      this.abstractText = abstractText;
+      this.distance = distance;
+    }
+  }
+
+  private static final class Candidate {
+    final int row;
+    final float distance;
+
+    Candidate(int row, float distance) {
+      this.row = row;
+      this.distance = distance;
+    }
+  }
+
+  private final Path directory;
+  private final int dimension;
+  private final FileChannel channel;
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private MappedByteBuffer mapped;
+  private FloatBuffer vectors;
+  private int capacity;
+  private int count;
+
+  // Row metadata and vector norms are small compared to the vectors and stay on the heap.
+  private final List<String[]> patents = new ArrayList<>();
+  private float[] norms = new float[0];
+
+  // IVF state, null until train() is called.
+  private float[][] centroids;
+  private List<int[]> lists;
+  private int[] listSizes;
+
+  private LocalPatentIndex(Path directory, int dimension, FileChannel channel) {
+    this.directory = directory;
+    this.dimension = dimension;
+    this.channel = channel;
+  }
+
+  /**
+   * Opens the index stored in {@code directory}, creating an empty one if it does not exist.
+   *
+   * @param directory The index directory.
+   * @param dimension The embedding dimension, 768 for {@code text-embedding-005}.
+   */
+  public static LocalPatentIndex open(Path directory, int dimension) throws IOException {
+    Files.createDirectories(directory);
+    FileChannel channel =
+        FileChannel.open(
+            directory.resolve(VECTORS_FILE),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+    LocalPatentIndex index = new LocalPatentIndex(directory, dimension, channel);
+    try {
+      index.load();
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+    return index;
+  }
+
+  private void load() throws IOException {
+    boolean exists = channel.size() >= HEADER_BYTES;
+    int rows = 0;
+    if (exists) {
+      MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+      header.order(ByteOrder.LITTLE_ENDIAN);
+      if (header.getInt(0) != MAGIC || header.getInt(4) != dimension) {
+        throw new IOException(
+            "Index at " + directory + " is not a " + dimension + "-dimensional patent index");
+      }
+      rows = header.getInt(8);
+    }
+    remap(Math.max(INITIAL_CAPACITY, rows));
+    mapped.putInt(0, MAGIC);
+    mapped.putInt(4, dimension);
+    mapped.putInt(8, rows);
+
+    Path patentsFile = directory.resolve(PATENTS_FILE);
+    boolean trailingRows = false;
+    if (Files.exists(patentsFile)) {
+      try (BufferedReader reader = Files.newBufferedReader(patentsFile, StandardCharsets.UTF_8)) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          if (patents.size() == rows) {
+            trailingRows = true;
+            break;
+          }
+          JsonObject row = GSON.fromJson(line, JsonObject.class);
+          patents.add(
+              new String[] {string(row, "id"), string(row, "title"), string(row, "abstract")});
+        }
+      }
+    }
+    if (trailingRows) {
+      // A previous add() was interrupted after writing the row but before committing the
+      // vector count; drop the uncommitted rows so the two files line up again.
+      List<String> lines = new ArrayList<>(rows);
+      for (String[] patent : patents) {
+        lines.add(toJson(patent[0], patent[1], patent[2]));
+      }
+      Files.write(patentsFile, lines, StandardCharsets.UTF_8);
+    }
+    if (patents.size() != rows) {
+      throw new IOException(
+          PATENTS_FILE + " has " + patents.size() + " rows but " + VECTORS_FILE + " has " + rows);
+    }
+    count = rows;
+    norms = new float[capacity];
+    for (int row = 0; row < count; row++) {
+      norms[row] = norm(row);
+    }
+  }
+
+  private void remap(int newCapacity) throws IOException {
+    if (mapped != null) {
+      mapped.force();
+    }
+    long bytes = HEADER_BYTES + (long) newCapacity * dimension * Float.BYTES;
+    mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+    mapped.order(ByteOrder.LITTLE_ENDIAN);
+    vectors = mapped.position(HEADER_BYTES).slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+    capacity = newCapacity;
+  }
+
+  /** Number of patents in the index. */
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return count;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** Appends a patent to the index, assigning it to its nearest cluster if the index is trained. */
+  public void add(String id, String title, String abstractText, float[] embedding)
+      throws IOException {
+    if (embedding.length != dimension) {
+      throw new IllegalArgumentException(
+          "Expected a " + dimension + "-dimensional embedding, got " + embedding.length);
+    }
+    lock.writeLock().lock();
+    try {
+      if (count == capacity) {
+        remap(capacity * 2);
+        norms = Arrays.copyOf(norms, capacity);
+      }
+      vectors.put(count * dimension, embedding);
+      try (BufferedWriter writer =
+          Files.newBufferedWriter(
+              directory.resolve(PATENTS_FILE),
+              StandardCharsets.UTF_8,
+              StandardOpenOption.CREATE,
+              StandardOpenOption.APPEND)) {
+        writer.write(toJson(id, title, abstractText));
+        writer.newLine();
+      }
+      patents.add(new String[] {id, title, abstractText});
+      norms[count] = norm(count);
+      if (centroids != null) {
+        assign(count);
+      }
+      count++;
+      // The row count is written last so a crash mid-insert never exposes a partial row.
+      mapped.putInt(8, count);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Copies every row of the {@code patents_data} table into the index.
+   *
+   * @return The number of rows imported.
+   */
+  public int importFrom(Connection connection) throws SQLException, IOException {
+    int imported = 0;
+    try (PreparedStatement statement =
+        connection.prepareStatement(
+            "SELECT id, title, abstract, abstract_embeddings::real[] AS embedding"
+                + " FROM patents_data WHERE abstract_embeddings IS NOT NULL")) {
+      statement.setFetchSize(100);
+      try (ResultSet resultSet = statement.executeQuery()) {
+        while (resultSet.next()) {
+          Object[] values = (Object[]) resultSet.getArray("embedding").getArray();
+          float[] embedding = new float[values.length];
+          for (int i = 0; i < values.length; i++) {
+            embedding[i] = ((Number) values[i]).floatValue();
+          }
+          add(
+              resultSet.getString("id"),
+              resultSet.getString("title"),
+              resultSet.getString("abstract"),
+              embedding);
+          imported++;
+        }
+      }
+    }
+    return imported;
+  }
+
+  /**
+   * Builds or extends an index from the {@code patents_data} table.
+   *
+   * <pre>
+   * mvn compile exec:java -Dexec.mainClass="agents.LocalPatentIndex" \
+   *     -Dexec.args="&lt;index-dir&gt; &lt;jdbc-url&gt; &lt;user&gt; &lt;password&gt;"
+   * </pre>
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length != 4) {
+      System.err.println("Usage: LocalPatentIndex <index-dir> <jdbc-url> <user> <password>");
+      System.exit(2);
+    }
+    try (LocalPatentIndex index = open(Path.of(args[0]), 768);
+        Connection connection = DriverManager.getConnection(args[1], args[2], args[3])) {
+      // Cursor-based fetching needs a transaction.
+      connection.setAutoCommit(false);
+      int imported = index.importFrom(connection);
+      System.out.printf("Imported %d patents, index now holds %d.%n", imported, index.size());
+    }
+  }
+
+  /**
+   * Clusters the current vectors into {@code nlist} inverted lists with k-means. Rows added
+   * afterwards are assigned to their nearest existing cluster.
+   */
+  public void train(int nlist, int iterations) {
+    lock.writeLock().lock();
+    try {
+      int k = Math.min(nlist, count);
+      if (k == 0) {
+        return;
+      }
+      Random random = new Random(42);
+      float[][] means = new float[k][];
+      for (int c = 0; c < k; c++) {
+        means[c] = vector(random.nextInt(count));
+      }
+      int[] assignment = new int[count];
+      for (int iteration = 0; iteration < iterations; iteration++) {
+        float[][] sums = new float[k][dimension];
+        int[] sizes = new int[k];
+        float[] row = new float[dimension];
+        for (int r = 0; r < count; r++) {
+          vectors.get(r * dimension, row);
+          int c = nearest(means, row);
+          assignment[r] = c;
+          sizes[c]++;
+          for (int d = 0; d < dimension; d++) {
+            sums[c][d] += row[d];
+          }
+        }
+        for (int c = 0; c < k; c++) {
+          if (sizes[c] > 0) {
+            for (int d = 0; d < dimension; d++) {
+              sums[c][d] /= sizes[c];
+            }
+            means[c] = sums[c];
+          }
+        }
+      }
+      centroids = means;
+      lists = new ArrayList<>(k);
+      listSizes = new int[k];
+      for (int c = 0; c < k; c++) {
+        lists.add(new int[16]);
+      }
+      for (int r = 0; r < count; r++) {
+        assign(r);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Returns the {@code k} patents closest to {@code query} by cosine distance, nearest first.
+   *
+   * @param nprobe Number of clusters to scan when the index is trained; ignored otherwise.
+   */
+  public List<Hit> search(float[] query, int k, int nprobe) {
+    if (query.length != dimension) {
+      throw new IllegalArgumentException(
+          "Expected a " + dimension + "-dimensional query, got " + query.length);
+    }
+    lock.readLock().lock();
+    try {
+      float queryNorm = (float) Math.sqrt(dot(query, query));
+      // Max-heap on distance holding the best k rows seen so far.
+      PriorityQueue<Candidate> best =
+          new PriorityQueue<>(
+              k + 1, Comparator.comparingDouble((Candidate c) -> c.distance).reversed());
+      if (centroids == null) {
+        for (int r = 0; r < count; r++) {
+          offer(best, k, r, cosineDistance(query, queryNorm, r));
+        }
+      } else {
+        for (int c : closestCentroids(query, nprobe)) {
+          int[] members = lists.get(c);
+          for (int i = 0; i < listSizes[c]; i++) {
+            offer(best, k, members[i], cosineDistance(query, queryNorm, members[i]));
+          }
+        }
+      }
+      List<Hit> hits = new ArrayList<>(best.size());
+      while (!best.isEmpty()) {
+        Candidate candidate = best.poll();
+        String[] patent = patents.get(candidate.row);
+        hits.add(new Hit(patent[0], patent[1], patent[2], candidate.distance));
+      }
+      Collections.reverse(hits);
+      return hits;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Formats hits exactly like the {@code PatentSearch} function does, so {@code explainPatent}
+   * can read them back from session state.
+   */
+  public static String format(List<Hit> hits) {
+    StringBuilder result = new StringBuilder("Here is the list of matching patents: ");
+    for (Hit hit : hits) {
+      result
+          .append("\n\n\n\n Title: ")
+          .append(hit.id)
+          .append(" - ")
+          .append(hit.title)
+          .append(". Abstract: ")
+          .append(hit.abstractText);
+    }
+    return result.toString();
+  }
+
+  @Override
+  public void close() throws IOException {
+    lock.writeLock().lock();
+    try {
+      mapped.force();
+      channel.close();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private static String toJson(String id, String title, String abstractText) {
+    JsonObject row = new JsonObject();
+    row.addProperty("id", id);
+    row.addProperty("title", title);
+    row.addProperty("abstract", abstractText);
+    return GSON.toJson(row);
+  }
+
+  private static String string(JsonObject row, String name) {
+    return row.has(name) && !row.get(name).isJsonNull() ? row.get(name).getAsString() : "";
+  }
+
+  private static void offer(PriorityQueue<Candidate> best, int k, int row, float distance) {
+    if (best.size() < k) {
+      best.add(new Candidate(row, distance));
+    } else if (distance < best.peek().distance) {
+      best.poll();
+      best.add(new Candidate(row, distance));
+    }
+  }
+
+  private int[] closestCentroids(float[] query, int nprobe) {
+    Integer[] order = new Integer[centroids.length];
+    float[] distances = new float[centroids.length];
+    for (int c = 0; c < centroids.length; c++) {
+      order[c] = c;
+      distances[c] = squaredDistance(centroids[c], query);
+    }
+    Arrays.sort(order, Comparator.comparingDouble(c -> distances[c]));
+    int probes = Math.max(1, Math.min(nprobe, centroids.length));
+    int[] result = new int[probes];
+    for (int i = 0; i < probes; i++) {
+      result[i] = order[i];
+    }
+    return result;
+  }
+
+  private void assign(int row) {
+    int c = nearest(centroids, vector(row));
+    int[] members = lists.get(c);
+    if (listSizes[c] == members.length) {
+      members = Arrays.copyOf(members, members.length * 2);
+      lists.set(c, members);
+    }
+    members[listSizes[c]++] = row;
+  }
+
+  private static int nearest(float[][] means, float[] row) {
+    int best = 0;
+    float bestDistance = Float.MAX_VALUE;
+    for (int c = 0; c < means.length; c++) {
+      float distance = squaredDistance(means[c], row);
+      if (distance < bestDistance) {
+        best = c;
+        bestDistance = distance;
+      }
+    }
+    return best;
+  }
+
+  private float[] vector(int row) {
+    float[] vector = new float[dimension];
+    vectors.get(row * dimension, vector);
+    return vector;
+  }
+
+  private float norm(int row) {
+    float sum = 0f;
+    int base = row * dimension;
+    for (int d = 0; d < dimension; d++) {
+      float v = vectors.get(base + d);
+      sum += v * v;
+    }
+    return (float) Math.sqrt(sum);
+  }
+
+  // Same metric as pgvector's <=> operator.
+  private float cosineDistance(float[] query, float queryNorm, int row) {
+    float denominator = queryNorm * norms[row];
+    if (denominator == 0f) {
+      return 1f;
+    }
+    return 1f - dot(query, row * dimension) / denominator;
+  }
+
+  // Distance kernel, unrolled four ways so the JIT can keep independent accumulators in
+  // registers and auto-vectorize the loop.
+  private float dot(float[] query, int base) {
+    float s0 = 0f;
+    float s1 = 0f;
+    float s2 = 0f;
+    float s3 = 0f;
+    int d = 0;
+    for (; d + 3 < dimension; d += 4) {
+      s0 += query[d] * vectors.get(base + d);
+      s1 += query[d + 1] * vectors.get(base + d + 1);
+      s2 += query[d + 2] * vectors.get(base + d + 2);
+      s3 += query[d + 3] * vectors.get(base + d + 3);
+    }
+    for (; d < dimension; d++) {
+      s0 += query[d] * vectors.get(base + d);
+    }
+    return (s0 + s1) + (s2 + s3);
+  }
+
+  private static float dot(float[] a, float[] b) {
+    float sum = 0f;
+    for (int d = 0; d < a.length; d++) {
+      sum += a[d] * b[d];
+    }
+    return sum;
+  }
+
+  private static float squaredDistance(float[] a, float[] b) {
+    float sum = 0f;
+    for (int d = 0; d < a.length; d++) {
+      float diff = a[d] - b[d];
+      sum += diff * diff;
+    }
+    return sum;
+  }
+}
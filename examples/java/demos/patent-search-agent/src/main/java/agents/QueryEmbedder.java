@@ -0,0 +1,61 @@
+/*
+ * Copyright 2025 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package agents;
+
+import com.google.genai.Client;
+import com.google.genai.types.ContentEmbedding;
+import com.google.genai.types.EmbedContentResponse;
+import java.util.List;
+
+/** Turns search text into the query vector used by {@link LocalPatentIndex}. */
+@FunctionalInterface
+public interface QueryEmbedder {
+
+  float[] embed(String text) throws Exception;
+
+  /**
+   * Embeds text with the model named by {@code QUERY_EMBEDDING_MODEL}, by default the same {@code
+   * text-embedding-005} model that produced the {@code abstract_embeddings} column. That model is
+   * only served by Vertex AI, so the default needs {@code GOOGLE_GENAI_USE_VERTEXAI=TRUE} with a
+   * project and location rather than an API key.
+   */
+  static QueryEmbedder gemini() {
+    String model = System.getenv("QUERY_EMBEDDING_MODEL");
+    return gemini(model == null || model.isBlank() ? "text-embedding-005" : model.trim());
+  }
+
+  /**
+   * Embeds text with {@code model}, using the API key or Vertex AI settings from the environment.
+   */
+  static QueryEmbedder gemini(String model) {
+    Client client = new Client();
+    return text -> {
+      EmbedContentResponse response = client.models.embedContent(model, text, /* config= */ null);
+      List<Float> values =
+          response
+              .embeddings()
+              .flatMap(embeddings -> embeddings.stream().findFirst())
+              .flatMap(ContentEmbedding::values)
+              .orElseThrow(() -> new IllegalStateException("No embedding returned for: " + text));
+      float[] embedding = new float[values.size()];
+      for (int i = 0; i < embedding.length; i++) {
+        embedding[i] = values.get(i);
+      }
+      return embedding;
+    };
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2025 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package agents;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces concurrent patent searches into batched requests to the {@code PatentSearch}
+ * function.
+ *
+ * <p>The first search submitted opens a batch. The batch is sent as one {@code {"searches":
+ * [...]}} request when it reaches {@code maxBatchSize} distinct texts or when {@code maxWait} has
+ * elapsed, whichever comes first. The function answers the whole batch with one multi-query
+ * statement and the results are handed back to each waiting caller. Identical texts in the same
+ * batch share a single result.
+ */
+final class SearchBatcher {
+
+  private static final Gson GSON = new Gson();
+
+  private final HttpClient client;
+  private final URI endpoint;
+  private final int maxBatchSize;
+  private final long maxWaitMillis;
+  private final Duration timeout;
+  private final ScheduledExecutorService scheduler =
+      Executors.newSingleThreadScheduledExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "patent-search-batcher");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  private final Object lock = new Object();
+  private Map<String, CompletableFuture<String>> pending = new LinkedHashMap<>();
+  private ScheduledFuture<?> flushTask;
+
+  SearchBatcher(
+      HttpClient client, URI endpoint, int maxBatchSize, Duration maxWait, Duration timeout) {
+    this.client = client;
+    this.endpoint = endpoint;
+    this.maxBatchSize = maxBatchSize;
+    this.maxWaitMillis = maxWait.toMillis();
+    this.timeout = timeout;
+  }
+
+  /** Queues a search and returns the plain text report the function produces for it. */
+  CompletableFuture<String> submit(String searchText) {
+    Map<String, CompletableFuture<String>> fullBatch = null;
+    CompletableFuture<String> result;
+    synchronized (lock) {
+      result = pending.computeIfAbsent(searchText, text -> new CompletableFuture<>());
+      if (pending.size() >= maxBatchSize) {
+        fullBatch = drain();
+      } else if (flushTask == null) {
+        flushTask = scheduler.schedule(this::flush, maxWaitMillis, TimeUnit.MILLISECONDS);
+      }
+    }
+    if (fullBatch != null) {
+      send(fullBatch);
+    }
+    return result;
+  }
+
+  private void flush() {
+    Map<String, CompletableFuture<String>> batch;
+    synchronized (lock) {
+      batch = drain();
+    }
+    if (!batch.isEmpty()) {
+      send(batch);
+    }
+  }
+
+  // Must be called while holding lock.
+  private Map<String, CompletableFuture<String>> drain() {
+    if (flushTask != null) {
+      flushTask.cancel(false);
+      flushTask = null;
+    }
+    Map<String, CompletableFuture<String>> batch = pending;
+    pending = new LinkedHashMap<>();
+    return batch;
+  }
+
+  private void send(Map<String, CompletableFuture<String>> batch) {
+    List<String> texts = new ArrayList<>(batch.keySet());
+    HttpRequest request =
+        HttpRequest.newBuilder(endpoint)
+            .timeout(timeout)
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(GSON.toJson(Map.of("searches", texts))))
+            .build();
+    client
+        .sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+        .whenComplete(
+            (response, error) -> {
+              try {
+                if (error != null) {
+                  throw error;
+                }
+                if (response.statusCode() != 200) {
+                  throw new IOException(
+                      "Batched search failed with status " + response.statusCode());
+                }
+                JsonArray results =
+                    GSON.fromJson(
+                            new String(response.body(), StandardCharsets.UTF_8), JsonObject.class)
+                        .getAsJsonArray("results");
+                for (int i = 0; i < texts.size(); i++) {
+                  batch.get(texts.get(i)).complete(results.get(i).getAsString());
+                }
+              } catch (Throwable t) {
+                // Futures that already received their result ignore this.
+                batch.values().forEach(future -> future.completeExceptionally(t));
+              }
+            });
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2025 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package agents;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches search reports by the embedding of the search text, so that a search that is close
+ * enough in meaning to an earlier one is answered without running it again.
+ *
+ * <p>A lookup returns the report of the most similar cached search whose cosine distance to the
+ * query is at most {@code maxDistance}. Entries expire after {@code ttl} and the least recently
+ * used ones are evicted once the estimated size of all entries exceeds {@code maxBytes}. The hit
+ * ratio and the search time saved by hits are reported by {@link #stats()}, which is what the
+ * distance threshold should be tuned against: a higher threshold saves more searches but returns
+ * results for queries that only roughly match the original one.
+ */
+final class SemanticResultCache {
+
+  // Rough per-entry overhead of the entry object, map node and array/string headers.
+  private static final long ENTRY_OVERHEAD_BYTES = 128;
+
+  private final double maxDistance;
+  private final long maxBytes;
+  private final long ttlNanos;
+
+  // Access ordered, so iteration starts at the least recently used entry.
+  private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long nextId;
+  private long bytes;
+  private long hits;
+  private long misses;
+  private long evictions;
+  private long savedNanos;
+
+  SemanticResultCache(double maxDistance, long maxBytes, Duration ttl) {
+    if (maxDistance < 0 || maxDistance > 2) {
+      throw new IllegalArgumentException("maxDistance must be between 0 and 2: " + maxDistance);
+    }
+    this.maxDistance = maxDistance;
+    this.maxBytes = maxBytes;
+    this.ttlNanos = ttl.toNanos();
+  }
+
+  /** Returns the cached report for the nearest search within the threshold, or {@code null}. */
+  synchronized String get(float[] query) {
+    float[] normalized = normalize(query);
+    long now = System.nanoTime();
+    Entry best = null;
+    double bestDistance = Double.MAX_VALUE;
+    for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+      Entry entry = it.next();
+      if (now - entry.createdNanos > ttlNanos) {
+        remove(it, entry);
+        continue;
+      }
+      double distance = 1 - dot(normalized, entry.embedding);
+      if (distance <= maxDistance && distance < bestDistance) {
+        best = entry;
+        bestDistance = distance;
+      }
+    }
+    if (best == null) {
+      misses++;
+      return null;
+    }
+    hits++;
+    savedNanos += best.searchNanos;
+    entries.get(best.id); // Marks the entry as most recently used.
+    return best.report;
+  }
+
+  /**
+   * Caches the report of a search that took {@code searchNanos} to run. Reports that are larger
+   * than the whole cache are not stored.
+   */
+  synchronized void put(float[] query, String report, long searchNanos) {
+    float[] normalized = normalize(query);
+    long size = ENTRY_OVERHEAD_BYTES + 4L * normalized.length + 2L * report.length();
+    if (size > maxBytes) {
+      return;
+    }
+    Entry entry = new Entry(nextId++, normalized, report, size, searchNanos, System.nanoTime());
+    entries.put(entry.id, entry);
+    bytes += size;
+    for (Iterator<Entry> it = entries.values().iterator(); bytes > maxBytes && it.hasNext(); ) {
+      remove(it, it.next());
+      evictions++;
+    }
+  }
+
+  /** Returns the hit ratio, saved search time and size of the cache. */
+  synchronized Map<String, Object> stats() {
+    long lookups = hits + misses;
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stats.put("entries", entries.size());
+    stats.put("bytes", bytes);
+    stats.put("hits", hits);
+    stats.put("misses", misses);
+    stats.put("hitRatio", lookups == 0 ? 0.0 : (double) hits / lookups);
+    stats.put("evictions", evictions);
+    stats.put("savedLatencyMillis", savedNanos / 1_000_000);
+    stats.put("maxDistance", maxDistance);
+    return stats;
+  }
+
+  private void remove(Iterator<Entry> it, Entry entry) {
+    it.remove();
+    bytes -= entry.bytes;
+  }
+
+  private static float[] normalize(float[] vector) {
+    double norm = Math.sqrt(dot(vector, vector));
+    float[] normalized = new float[vector.length];
+    if (norm > 0) {
+      for (int i = 0; i < vector.length; i++) {
+        normalized[i] = (float) (vector[i] / norm);
+      }
+    }
+    return normalized;
+  }
+
+  private static double dot(float[] a, float[] b) {
+    if (a.length != b.length) {
+      return 0;
+    }
+    double sum = 0;
+    for (int i = 0; i < a.length; i++) {
+      sum += a[i] * b[i];
+    }
+    return sum;
+  }
+
+  private static final class Entry {
+    final long id;
+    final float[] embedding;
+    final String report;
+    final long bytes;
+    final long searchNanos;
+    final long createdNanos;
+
+    Entry(
+        long id, float[] embedding, String report, long bytes, long searchNanos, long createdNanos) {
+      this.id = id;
+      this.embedding = embedding;
+      this.report = report;
+      this.bytes = bytes;
+      this.searchNanos = searchNanos;
+      this.createdNanos = createdNanos;
+    }
+  }
+}
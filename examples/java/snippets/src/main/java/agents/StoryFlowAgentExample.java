@@ -2,6 +2,7 @@ package agents;
 
 // --8<-- [start:full_code]
 
+import agents.workflow.AgentTracer;
 import com.google.adk.agents.LlmAgent;
 import com.google.adk.agents.BaseAgent;
 import com.google.adk.agents.InvocationContext;
@@ -31,6 +32,10 @@ public class StoryFlowAgentExample extends BaseAgent {
 
   private static final Logger logger = Logger.getLogger(StoryFlowAgentExample.class.getName());
 
+  // Records each run of the workflow as a span and logs it when the run ends.
+  private static final AgentTracer tracer =
+      new AgentTracer(span -> logger.log(Level.INFO, span::toString), 1.0);
+
   // --8<-- [start:init]
   private final LlmAgent storyGenerator;
   private final LoopAgent loopAgent;
@@ -149,14 +154,14 @@ public class StoryFlowAgentExample extends BaseAgent {
         new StoryFlowAgentExample(APP_NAME, storyGenerator, loopAgent, sequentialAgent);
 
     // --- Run the Agent ---
-    runAgent(storyFlowAgentExample, "a lonely robot finding a friend in a junkyard");
+    runAgent(tracer.trace(storyFlowAgentExample), "a lonely robot finding a friend in a junkyard");
   }
 
   // --8<-- [start:story_flow_agent]
   // --- Function to Interact with the Agent ---
   // Sends a new topic to the agent (overwriting the initial one if needed)
   // and runs the workflow.
-  public static void runAgent(StoryFlowAgentExample agent, String userTopic) {
+  public static void runAgent(BaseAgent agent, String userTopic) {
     // --- Setup Runner and Session ---
     InMemoryRunner runner = new InMemoryRunner(agent);
 
@@ -166,7 +171,7 @@ public class StoryFlowAgentExample extends BaseAgent {
     Session session =
         runner
             .sessionService()
-            .createSession(APP_NAME, USER_ID, new ConcurrentHashMap<>(initialState), SESSION_ID)
+            .createSession(runner.appName(), USER_ID, new ConcurrentHashMap<>(initialState), SESSION_ID)
             .blockingGet();
     logger.log(Level.INFO, () -> String.format("Initial session state: %s", session.state()));
 
@@ -202,7 +207,7 @@ public class StoryFlowAgentExample extends BaseAgent {
     Session finalSession =
         runner
             .sessionService()
-            .getSession(APP_NAME, USER_ID, SESSION_ID, Optional.empty())
+            .getSession(runner.appName(), USER_ID, SESSION_ID, Optional.empty())
             .blockingGet();
 
     assert finalSession != null;
@@ -273,8 +278,9 @@ public class StoryFlowAgentExample extends BaseAgent {
     logger.log(Level.INFO, () -> String.format("[%s] Running %s...", name(), stageName));
     return agentToRun
         .runAsync(ctx)
+        // Serializing every event is costly, so it is only done when FINE logging is enabled.
         .doOnNext(event ->
-            logger.log(Level.INFO,() ->
+            logger.log(Level.FINE, () ->
                 String.format("[%s] Event from %s: %s", name(), stageName, event.toJson())))
         .doOnError(err ->
             logger.log(Level.SEVERE,
@@ -0,0 +1,174 @@
+package agents.workflow;
+
+import com.google.adk.events.Event;
+import com.google.genai.types.Content;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * One run of an agent or of a stage of a custom workflow agent, as recorded by {@link
+ * AgentTracer}.
+ *
+ * <p>The fields follow the OpenTelemetry span model (trace and span ids, parent span id, start and
+ * end time in epoch nanoseconds, attributes), so finished spans can be handed to any
+ * OpenTelemetry-compatible collector. The events emitted during the span are kept as they are and
+ * only turned into JSON when {@link #eventsJson()} is called, i.e. when an exporter actually wants
+ * them.
+ *
+ * <p>Model latency is the time from the previous event (or the start of the span) to each final
+ * model response, and tool latency the time from an event with function calls to the event with
+ * their responses. Both are approximations when several sub-agents run concurrently inside the
+ * span.
+ */
+public final class AgentSpan {
+
+  private final String traceId;
+  private final String spanId;
+  private final String parentSpanId;
+  private final String name;
+  private final String kind;
+  private final String invocationId;
+  private final boolean sampled;
+  private final long startEpochNanos;
+  private final long startNanos;
+  private final List<Event> events = new ArrayList<>();
+  private long firstEventNanos = -1;
+  private long lastEventNanos;
+  private long toolCallNanos = -1;
+  private long modelCalls;
+  private long modelNanos;
+  private long toolCalls;
+  private long toolNanos;
+  private long endEpochNanos;
+  private Throwable error;
+
+  AgentSpan(
+      String traceId,
+      String spanId,
+      String parentSpanId,
+      String name,
+      String kind,
+      String invocationId,
+      boolean sampled) {
+    this.traceId = traceId;
+    this.spanId = spanId;
+    this.parentSpanId = parentSpanId;
+    this.name = name;
+    this.kind = kind;
+    this.invocationId = invocationId;
+    this.sampled = sampled;
+    this.startNanos = System.nanoTime();
+    this.startEpochNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+    this.lastEventNanos = startNanos;
+  }
+
+  synchronized void record(Event event) {
+    long now = System.nanoTime();
+    if (firstEventNanos < 0) {
+      firstEventNanos = now;
+    }
+    events.add(event);
+    if (!event.functionResponses().isEmpty() && toolCallNanos >= 0) {
+      toolCalls += event.functionResponses().size();
+      toolNanos += now - toolCallNanos;
+      toolCallNanos = -1;
+    } else if (isModelResponse(event)) {
+      modelCalls++;
+      modelNanos += now - lastEventNanos;
+    }
+    if (!event.functionCalls().isEmpty()) {
+      toolCallNanos = now;
+    }
+    lastEventNanos = now;
+  }
+
+  synchronized void end(Throwable error) {
+    this.error = error;
+    this.endEpochNanos = startEpochNanos + (System.nanoTime() - startNanos);
+  }
+
+  private static boolean isModelResponse(Event event) {
+    return !event.partial().orElse(false)
+        && event.content().flatMap(Content::role).map("model"::equals).orElse(false);
+  }
+
+  public String traceId() {
+    return traceId;
+  }
+
+  public String spanId() {
+    return spanId;
+  }
+
+  /** The id of the enclosing span, or {@code null} for the root span of a trace. */
+  public String parentSpanId() {
+    return parentSpanId;
+  }
+
+  public String name() {
+    return name;
+  }
+
+  /** {@code "agent"} for a traced agent, {@code "stage"} for a stage of a custom agent. */
+  public String kind() {
+    return kind;
+  }
+
+  public boolean isSampled() {
+    return sampled;
+  }
+
+  public long startEpochNanos() {
+    return startEpochNanos;
+  }
+
+  public synchronized long endEpochNanos() {
+    return endEpochNanos;
+  }
+
+  /** The error the span ended with, or {@code null}. */
+  public synchronized Throwable error() {
+    return error;
+  }
+
+  /** Counts and latencies of the span, keyed by OpenTelemetry-style attribute names. */
+  public synchronized Map<String, Object> attributes() {
+    Map<String, Object> attributes = new LinkedHashMap<>();
+    attributes.put("adk.span.kind", kind);
+    attributes.put("adk.invocation_id", invocationId);
+    attributes.put("adk.events", (long) events.size());
+    if (firstEventNanos >= 0) {
+      long timeToFirstEvent = TimeUnit.NANOSECONDS.toMillis(firstEventNanos - startNanos);
+      attributes.put("adk.time_to_first_event_ms", timeToFirstEvent);
+    }
+    attributes.put("adk.model_calls", modelCalls);
+    attributes.put("adk.model_latency_ms", TimeUnit.NANOSECONDS.toMillis(modelNanos));
+    attributes.put("adk.tool_calls", toolCalls);
+    attributes.put("adk.tool_latency_ms", TimeUnit.NANOSECONDS.toMillis(toolNanos));
+    return attributes;
+  }
+
+  public synchronized List<Event> events() {
+    return Collections.unmodifiableList(new ArrayList<>(events));
+  }
+
+  /** Serializes the events of the span; this is the expensive part and is never done eagerly. */
+  public List<String> eventsJson() {
+    return events().stream().map(Event::toJson).collect(Collectors.toList());
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%s %s (%d ms) %s",
+        kind,
+        name,
+        TimeUnit.NANOSECONDS.toMillis(endEpochNanos() - startEpochNanos),
+        attributes());
+  }
+}
@@ -0,0 +1,122 @@
+package agents.workflow;
+
+import com.google.adk.agents.BaseAgent;
+import com.google.adk.agents.InvocationContext;
+import com.google.adk.events.Event;
+import io.reactivex.rxjava3.core.Flowable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Records a span for every run of a traced agent and for every stage of a custom workflow agent,
+ * and passes the finished spans to a {@link SpanExporter}.
+ *
+ * <p>Spans nest along the agent tree: the span of a traced agent or stage is the child of the span
+ * of its nearest traced ancestor in the same invocation. Whether a trace is sampled is decided
+ * once, when its root span starts; spans of a trace that is not sampled record nothing and cost a
+ * map lookup, and event payloads are only serialized by exporters that ask for them.
+ *
+ * <p>A custom agent can record each of its stages with {@link #traceStage} instead of running the
+ * sub-agent directly:
+ *
+ * <pre>{@code
+ * AgentTracer tracer = new AgentTracer(new InMemorySpanExporter(), 0.1);
+ * BaseAgent storyFlow = tracer.trace(storyFlowAgentExample);
+ *
+ * // Inside the custom agent's runAsyncImpl:
+ * Flowable<Event> storyGenFlow = tracer.traceStage("StoryGenerator", storyGenerator, ctx);
+ * }</pre>
+ */
+public final class AgentTracer {
+
+  private final SpanExporter exporter;
+  private final double sampleRatio;
+  // Spans that have started but not ended, keyed by invocation id and agent name.
+  private final Map<String, AgentSpan> open = new ConcurrentHashMap<>();
+
+  /**
+   * @param sampleRatio share of traces to record, between 0 and 1
+   */
+  public AgentTracer(SpanExporter exporter, double sampleRatio) {
+    if (sampleRatio < 0 || sampleRatio > 1) {
+      throw new IllegalArgumentException("sampleRatio must be between 0 and 1: " + sampleRatio);
+    }
+    this.exporter = exporter;
+    this.sampleRatio = sampleRatio;
+  }
+
+  /** Wraps an agent so every run of it is recorded as an {@code "agent"} span. */
+  public TracedAgent trace(BaseAgent agent) {
+    return new TracedAgent(agent, this);
+  }
+
+  /**
+   * Runs one stage of a custom agent, recording it as a {@code "stage"} span named {@code
+   * stageName}. {@code agent} must be a sub-agent of the agent calling this.
+   */
+  public Flowable<Event> traceStage(
+      String stageName, BaseAgent agent, InvocationContext invocationContext) {
+    return span(
+        stageName, "stage", agent, invocationContext, () -> agent.runAsync(invocationContext));
+  }
+
+  Flowable<Event> span(
+      String spanName,
+      String kind,
+      BaseAgent agent,
+      InvocationContext invocationContext,
+      Supplier<Flowable<Event>> run) {
+    return Flowable.defer(
+        () -> {
+          String key = invocationContext.invocationId() + "/" + agent.name();
+          AgentSpan span = start(spanName, kind, agent, invocationContext);
+          open.put(key, span);
+          Flowable<Event> events = run.get();
+          if (!span.isSampled()) {
+            return events.doFinally(() -> open.remove(key));
+          }
+          return events
+              .doOnNext(span::record)
+              .doOnError(span::end)
+              .doOnComplete(() -> span.end(null))
+              .doOnCancel(() -> span.end(null))
+              .doFinally(
+                  () -> {
+                    open.remove(key);
+                    exporter.export(span);
+                  });
+        });
+  }
+
+  private AgentSpan start(
+      String spanName, String kind, BaseAgent agent, InvocationContext invocationContext) {
+    AgentSpan parent = null;
+    for (BaseAgent ancestor = agent.parentAgent();
+        ancestor != null && parent == null;
+        ancestor = ancestor.parentAgent()) {
+      parent = open.get(invocationContext.invocationId() + "/" + ancestor.name());
+    }
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    String spanId = String.format("%016x", random.nextLong());
+    if (parent != null) {
+      return new AgentSpan(
+          parent.traceId(),
+          spanId,
+          parent.spanId(),
+          spanName,
+          kind,
+          invocationContext.invocationId(),
+          parent.isSampled());
+    }
+    return new AgentSpan(
+        String.format("%016x%016x", random.nextLong(), random.nextLong()),
+        spanId,
+        null,
+        spanName,
+        kind,
+        invocationContext.invocationId(),
+        random.nextDouble() < sampleRatio);
+  }
+}
@@ -0,0 +1,125 @@
+package agents.workflow;
+
+import com.google.adk.agents.BaseAgent;
+import com.google.adk.agents.InvocationContext;
+import com.google.adk.events.Event;
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs a workflow under a {@link WorkflowBudget} and stops it when the budget runs out.
+ *
+ * <p>Every event of the workflow is charged to the budget. Nested {@link DegradableAgent}s use
+ * the remaining budget to switch to cheaper variants before it is exhausted; once it is exhausted
+ * (or the wall-clock limit passes) the workflow is cancelled, so the end-to-end latency never
+ * exceeds {@code maxWallClock}. The workflow runs on an {@code io()} thread so that the limit can
+ * cut it short even while a model call blocks that thread.
+ *
+ * <pre>{@code
+ * BaseAgent storyFlow =
+ *     BudgetedWorkflowAgent.builder(storyFlowAgentExample)
+ *         .maxWallClock(Duration.ofSeconds(30))
+ *         .maxTokens(20_000)
+ *         .maxModelCalls(12)
+ *         .build();
+ * }</pre>
+ */
+public class BudgetedWorkflowAgent extends BaseAgent {
+
+  private static final Logger logger = Logger.getLogger(BudgetedWorkflowAgent.class.getName());
+
+  private final BaseAgent workflow;
+  private final Duration maxWallClock;
+  private final long maxTokens;
+  private final long maxModelCalls;
+
+  private BudgetedWorkflowAgent(Builder builder) {
+    super(builder.name, builder.workflow.description(), List.of(builder.workflow), null, null);
+    this.workflow = builder.workflow;
+    this.maxWallClock = builder.maxWallClock;
+    this.maxTokens = builder.maxTokens;
+    this.maxModelCalls = builder.maxModelCalls;
+  }
+
+  public static Builder builder(BaseAgent workflow) {
+    return new Builder(workflow);
+  }
+
+  @Override
+  protected Flowable<Event> runAsyncImpl(InvocationContext invocationContext) {
+    return Flowable.defer(
+        () -> {
+          WorkflowBudget budget = new WorkflowBudget(maxWallClock, maxTokens, maxModelCalls);
+          WorkflowBudget.attach(invocationContext, budget);
+          return workflow
+              .runAsync(invocationContext)
+              .subscribeOn(Schedulers.io())
+              .doOnNext(budget::consume)
+              .takeUntil(
+                  event -> {
+                    if (budget.isExhausted()) {
+                      logger.log(
+                          Level.WARNING,
+                          () -> String.format("[%s] Budget exhausted: %s", name(), budget));
+                      return true;
+                    }
+                    return false;
+                  })
+              .takeUntil(Flowable.timer(maxWallClock.toMillis(), TimeUnit.MILLISECONDS))
+              .doFinally(
+                  () -> {
+                    WorkflowBudget.detach(invocationContext, budget);
+                    logger.log(
+                        Level.INFO, () -> String.format("[%s] Budget used: %s", name(), budget));
+                  });
+        });
+  }
+
+  @Override
+  protected Flowable<Event> runLiveImpl(InvocationContext invocationContext) {
+    return Flowable.error(new UnsupportedOperationException("runLive not implemented."));
+  }
+
+  /** Builder for {@link BudgetedWorkflowAgent}. Limits that are not set are unbounded. */
+  public static class Builder {
+    private final BaseAgent workflow;
+    private String name;
+    private Duration maxWallClock = Duration.ofDays(1);
+    private long maxTokens = Long.MAX_VALUE;
+    private long maxModelCalls = Long.MAX_VALUE;
+
+    private Builder(BaseAgent workflow) {
+      this.workflow = workflow;
+      this.name = workflow.name() + "Budgeted";
+    }
+
+    public Builder name(String name) {
+      this.name = name;
+      return this;
+    }
+
+    public Builder maxWallClock(Duration maxWallClock) {
+      this.maxWallClock = maxWallClock;
+      return this;
+    }
+
+    public Builder maxTokens(long maxTokens) {
+      this.maxTokens = maxTokens;
+      return this;
+    }
+
+    public Builder maxModelCalls(long maxModelCalls) {
+      this.maxModelCalls = maxModelCalls;
+      return this;
+    }
+
+    public BudgetedWorkflowAgent build() {
+      return new BudgetedWorkflowAgent(this);
+    }
+  }
+}
@@ -0,0 +1,36 @@
+package agents.workflow;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Progress of a {@link CheckpointedWorkflowAgent} run: the position of the next sub-agent to run
+ * and the state changes made by the sub-agents that already completed.
+ *
+ * <p>Public fields and a no-argument constructor keep the class serializable with Jackson.
+ */
+public final class Checkpoint {
+
+  /** Loop iteration of the next sub-agent, starting at 0. */
+  public int iteration;
+
+  /** Index of the next sub-agent within the iteration. */
+  public int step;
+
+  /** Accumulated state delta of the completed sub-agents, without {@code temp:} keys. */
+  public Map<String, Object> stateDelta = new LinkedHashMap<>();
+
+  public Checkpoint() {}
+
+  Checkpoint(int iteration, int step, Map<String, Object> stateDelta) {
+    this.iteration = iteration;
+    this.step = step;
+    this.stateDelta = new LinkedHashMap<>(stateDelta);
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "iteration %d, step %d, %d state keys", iteration, step, stateDelta.size());
+  }
+}
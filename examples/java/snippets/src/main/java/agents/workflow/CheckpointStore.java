@@ -0,0 +1,14 @@
+package agents.workflow;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/** Stores the latest {@link Checkpoint} of each workflow run. */
+public interface CheckpointStore {
+
+  Optional<Checkpoint> load(String key) throws IOException;
+
+  void save(String key, Checkpoint checkpoint) throws IOException;
+
+  void delete(String key) throws IOException;
+}
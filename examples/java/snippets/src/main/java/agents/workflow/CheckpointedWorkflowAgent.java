@@ -0,0 +1,197 @@
+package agents.workflow;
+
+import com.google.adk.agents.BaseAgent;
+import com.google.adk.agents.InvocationContext;
+import com.google.adk.events.Event;
+import com.google.adk.events.EventActions;
+import com.google.adk.sessions.State;
+import io.reactivex.rxjava3.core.Flowable;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs its sub-agents in order like a {@code SequentialAgent} (or, with {@code maxIterations}
+ * above 1, repeatedly like a {@code LoopAgent}) and saves a {@link Checkpoint} after every
+ * sub-agent that completes.
+ *
+ * <p>The checkpoint is keyed by app, user, session and agent name. When the agent runs again in a
+ * session that has a checkpoint, for example after the process died or a later sub-agent failed,
+ * it first emits the saved state delta so the session holds the results of the completed
+ * sub-agents again, and then continues with the sub-agent after the last completed one instead of
+ * repeating every model call. The checkpoint is deleted once the workflow finishes. Use {@link
+ * ResumableRunner#resume} to recreate a lost in-memory session and continue the workflow.
+ *
+ * <p>As in {@code LoopAgent}, an event that escalates ends the loop.
+ */
+public class CheckpointedWorkflowAgent extends BaseAgent {
+
+  private static final Logger logger = Logger.getLogger(CheckpointedWorkflowAgent.class.getName());
+
+  private final int maxIterations;
+  private final CheckpointStore store;
+
+  private CheckpointedWorkflowAgent(Builder builder) {
+    super(builder.name, builder.description, builder.subAgents, null, null);
+    this.maxIterations = builder.maxIterations;
+    this.store = builder.store;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /** Key of the checkpoint of this agent in the given session. */
+  public String checkpointKey(String appName, String userId, String sessionId) {
+    return String.join("/", appName, userId, sessionId, name());
+  }
+
+  @Override
+  protected Flowable<Event> runAsyncImpl(InvocationContext invocationContext) {
+    String key =
+        checkpointKey(
+            invocationContext.appName(),
+            invocationContext.userId(),
+            invocationContext.session().id());
+    return Flowable.defer(
+        () -> {
+          Optional<Checkpoint> loaded = store.load(key);
+          if (loaded.isPresent() && !fits(loaded.get())) {
+            // Saved by a workflow with other sub-agents, so its position means nothing here.
+            logger.log(
+                Level.WARNING,
+                () -> String.format("[%s] Dropping checkpoint %s.", name(), loaded.get()));
+            store.delete(key);
+          }
+          Optional<Checkpoint> saved = loaded.filter(this::fits);
+          Checkpoint progress = saved.orElseGet(Checkpoint::new);
+          Flowable<Event> restore = Flowable.empty();
+          if (saved.isPresent()) {
+            logger.log(
+                Level.INFO, () -> String.format("[%s] Resuming at %s.", name(), saved.get()));
+            if (!progress.stateDelta.isEmpty()) {
+              restore = Flowable.just(restoreEvent(invocationContext, progress.stateDelta));
+            }
+          }
+          return restore
+              .concatWith(runFrom(invocationContext, key, progress))
+              .concatWith(Flowable.defer(() -> finish(key)));
+        });
+  }
+
+  private boolean fits(Checkpoint checkpoint) {
+    return checkpoint.iteration >= 0
+        && checkpoint.step >= 0
+        && checkpoint.step < Math.max(subAgents().size(), 1);
+  }
+
+  // Runs the sub-agent at the checkpoint position, saves the next position and recurses.
+  private Flowable<Event> runFrom(
+      InvocationContext invocationContext, String key, Checkpoint progress) {
+    List<? extends BaseAgent> steps = subAgents();
+    if (progress.iteration >= maxIterations || steps.isEmpty()) {
+      return Flowable.empty();
+    }
+    BaseAgent step = steps.get(progress.step);
+    Map<String, Object> stateDelta = new LinkedHashMap<>(progress.stateDelta);
+    boolean[] escalated = {false};
+    return step.runAsync(invocationContext)
+        .doOnNext(
+            event -> {
+              event.actions().stateDelta().forEach(
+                  (stateKey, value) -> {
+                    if (!stateKey.startsWith(State.TEMP_PREFIX)) {
+                      stateDelta.put(stateKey, value);
+                    }
+                  });
+              if (event.actions().escalate().orElse(false)) {
+                escalated[0] = true;
+              }
+            })
+        .concatWith(
+            Flowable.defer(
+                () -> {
+                  boolean lastStep = progress.step + 1 == steps.size();
+                  Checkpoint next =
+                      escalated[0]
+                          ? new Checkpoint(maxIterations, 0, stateDelta)
+                          : new Checkpoint(
+                              lastStep ? progress.iteration + 1 : progress.iteration,
+                              lastStep ? 0 : progress.step + 1,
+                              stateDelta);
+                  store.save(key, next);
+                  return runFrom(invocationContext, key, next);
+                }));
+  }
+
+  private Flowable<Event> finish(String key) throws IOException {
+    store.delete(key);
+    return Flowable.empty();
+  }
+
+  private Event restoreEvent(InvocationContext invocationContext, Map<String, Object> delta) {
+    return Event.builder()
+        .id(Event.generateEventId())
+        .invocationId(invocationContext.invocationId())
+        .author(name())
+        .branch(invocationContext.branch())
+        .actions(EventActions.builder().stateDelta(new ConcurrentHashMap<>(delta)).build())
+        .build();
+  }
+
+  @Override
+  protected Flowable<Event> runLiveImpl(InvocationContext invocationContext) {
+    return Flowable.error(new UnsupportedOperationException("runLive not implemented."));
+  }
+
+  /** Builder for {@link CheckpointedWorkflowAgent}. */
+  public static class Builder {
+    private String name;
+    private String description = "";
+    private List<? extends BaseAgent> subAgents = List.of();
+    private int maxIterations = 1;
+    private CheckpointStore store;
+
+    public Builder name(String name) {
+      this.name = name;
+      return this;
+    }
+
+    public Builder description(String description) {
+      this.description = description;
+      return this;
+    }
+
+    public Builder subAgents(List<? extends BaseAgent> subAgents) {
+      this.subAgents = subAgents;
+      return this;
+    }
+
+    public Builder subAgents(BaseAgent... subAgents) {
+      return subAgents(List.of(subAgents));
+    }
+
+    /** Number of times the sub-agents are run; 1 (the default) behaves like a SequentialAgent. */
+    public Builder maxIterations(int maxIterations) {
+      this.maxIterations = maxIterations;
+      return this;
+    }
+
+    public Builder store(CheckpointStore store) {
+      this.store = store;
+      return this;
+    }
+
+    public CheckpointedWorkflowAgent build() {
+      if (store == null) {
+        throw new IllegalStateException("A checkpoint store is required.");
+      }
+      return new CheckpointedWorkflowAgent(this);
+    }
+  }
+}
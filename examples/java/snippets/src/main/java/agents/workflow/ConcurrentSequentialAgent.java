@@ -0,0 +1,121 @@
+package agents.workflow;
+
+import com.google.adk.agents.BaseAgent;
+import com.google.adk.agents.InvocationContext;
+import com.google.adk.events.Event;
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Drop-in replacement for {@code SequentialAgent} that runs independent consecutive steps
+ * concurrently.
+ *
+ * <p>The steps are grouped into stages by {@link SequentialPlan}. The steps of a stage start
+ * together, but their events are emitted in step order, exactly as a {@code SequentialAgent}
+ * would emit them: the events of a later step are held back until every earlier step of the
+ * stage has finished. The next stage starts once the whole stage has finished. Each step is
+ * subscribed on {@code scheduler}, {@code Schedulers.io()} by default, because a model call blocks
+ * the thread it runs on.
+ *
+ * <p>Concurrent steps do not see each other's replies in the conversation history, only in state.
+ * A step that relies on an earlier step's reply without referencing its {@code outputKey} as a
+ * {@code {key}} placeholder must declare that key with {@link Builder#reads(String, String...)}.
+ *
+ * <pre>{@code
+ * BaseAgent postProcessing =
+ *     ConcurrentSequentialAgent.builder()
+ *         .name("PostProcessing")
+ *         .subAgents(grammarCheck, toneCheck)
+ *         .build();
+ * }</pre>
+ */
+public class ConcurrentSequentialAgent extends BaseAgent {
+
+  private final SequentialPlan plan;
+  private final Scheduler scheduler;
+
+  private ConcurrentSequentialAgent(Builder builder) {
+    super(builder.name, builder.description, builder.subAgents, null, null);
+    this.plan = SequentialPlan.of(builder.subAgents, builder.extraReads);
+    this.scheduler = builder.scheduler;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public SequentialPlan plan() {
+    return plan;
+  }
+
+  @Override
+  protected Flowable<Event> runAsyncImpl(InvocationContext invocationContext) {
+    return Flowable.concat(
+        plan.stages().stream()
+            .map(
+                stage ->
+                    Flowable.concatEager(
+                        stage.stream()
+                            .map(
+                                step ->
+                                    Flowable.defer(() -> step.runAsync(invocationContext))
+                                        .subscribeOn(scheduler))
+                            .collect(Collectors.toList())))
+            .collect(Collectors.toList()));
+  }
+
+  @Override
+  protected Flowable<Event> runLiveImpl(InvocationContext invocationContext) {
+    return Flowable.error(new UnsupportedOperationException("runLive not implemented."));
+  }
+
+  /** Builder for {@link ConcurrentSequentialAgent}. */
+  public static class Builder {
+    private String name;
+    private String description = "";
+    private List<? extends BaseAgent> subAgents = List.of();
+    private final Map<String, Set<String>> extraReads = new HashMap<>();
+    private Scheduler scheduler = Schedulers.io();
+
+    public Builder name(String name) {
+      this.name = name;
+      return this;
+    }
+
+    public Builder description(String description) {
+      this.description = description;
+      return this;
+    }
+
+    public Builder subAgents(List<? extends BaseAgent> subAgents) {
+      this.subAgents = subAgents;
+      return this;
+    }
+
+    public Builder subAgents(BaseAgent... subAgents) {
+      return subAgents(List.of(subAgents));
+    }
+
+    /** Declares state keys the named step reads besides the ones found in its instruction. */
+    public Builder reads(String subAgentName, String... keys) {
+      extraReads.put(subAgentName, Set.of(keys));
+      return this;
+    }
+
+    /** Scheduler the steps are subscribed on; {@code Schedulers.io()} by default. */
+    public Builder scheduler(Scheduler scheduler) {
+      this.scheduler = scheduler;
+      return this;
+    }
+
+    public ConcurrentSequentialAgent build() {
+      return new ConcurrentSequentialAgent(this);
+    }
+  }
+}
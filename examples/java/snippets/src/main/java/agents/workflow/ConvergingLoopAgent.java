@@ -0,0 +1,202 @@
+package agents.workflow;
+
+import com.google.adk.agents.BaseAgent;
+import com.google.adk.agents.InvocationContext;
+import com.google.adk.events.Event;
+import io.reactivex.rxjava3.core.Flowable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@code LoopAgent} that can also stop on {@link LoopCondition}s evaluated on the session state,
+ * so a loop ends as soon as its output is good enough or stops changing instead of spending a
+ * model turn on an exit tool.
+ *
+ * <p>Conditions added with {@link Builder#exitWhen} are checked after every iteration; those
+ * added with {@link Builder#exitAfter} right after the named sub-agent, which skips the rest of
+ * the iteration. For the refinement loop of {@code LoopAgentExample}:
+ *
+ * <pre>{@code
+ * ConvergingLoopAgent refinementLoop =
+ *     ConvergingLoopAgent.builder()
+ *         .name("RefinementLoop")
+ *         .subAgents(criticAgentInLoop, refinerAgentInLoop)
+ *         .maxIterations(5)
+ *         .exitAfter(
+ *             "CriticAgent", LoopCondition.stateEquals("criticism", "No major issues found."))
+ *         .exitWhen(LoopCondition.converged("current_document", 0.02))
+ *         .build();
+ * }</pre>
+ *
+ * <p>As in {@code LoopAgent}, an event that escalates (such as the one from an {@code exitLoop}
+ * tool) also ends the loop.
+ */
+public class ConvergingLoopAgent extends BaseAgent {
+
+  private static final Logger logger = Logger.getLogger(ConvergingLoopAgent.class.getName());
+
+  private final int maxIterations;
+  private final List<LoopCondition> iterationConditions;
+  private final Map<String, List<LoopCondition>> stepConditions;
+
+  private ConvergingLoopAgent(Builder builder) {
+    super(builder.name, builder.description, builder.subAgents, null, null);
+    this.maxIterations = builder.maxIterations;
+    this.iterationConditions = List.copyOf(builder.iterationConditions);
+    this.stepConditions = Map.copyOf(builder.stepConditions);
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  @Override
+  protected Flowable<Event> runAsyncImpl(InvocationContext invocationContext) {
+    return Flowable.defer(() -> new Run(invocationContext).iteration(0));
+  }
+
+  /** State of one execution of the loop. */
+  private final class Run {
+    private final InvocationContext invocationContext;
+    private final long startNanos = System.nanoTime();
+    // Deltas seen in this run, so conditions do not depend on when the runner applies them.
+    private final Map<String, Object> stateDelta = new HashMap<>();
+    private Map<String, Object> previousState;
+    private long estimatedTokens;
+    private boolean done;
+
+    Run(InvocationContext invocationContext) {
+      this.invocationContext = invocationContext;
+      this.previousState = state();
+    }
+
+    Flowable<Event> iteration(int iteration) {
+      if (done || iteration >= maxIterations) {
+        return Flowable.empty();
+      }
+      List<Flowable<Event>> steps = new ArrayList<>();
+      for (BaseAgent step : subAgents()) {
+        steps.add(
+            Flowable.defer(
+                () ->
+                    done
+                        ? Flowable.<Event>empty()
+                        : step.runAsync(invocationContext)
+                            .doOnNext(this::observe)
+                            .doOnComplete(
+                                () ->
+                                    check(
+                                        iteration,
+                                        step.name(),
+                                        stepConditions.getOrDefault(step.name(), List.of())))));
+      }
+      return Flowable.concat(steps)
+          .concatWith(
+              Flowable.defer(
+                  () -> {
+                    if (!done) {
+                      check(iteration, "iteration " + iteration, iterationConditions);
+                    }
+                    previousState = state();
+                    return iteration(iteration + 1);
+                  }));
+    }
+
+    private void observe(Event event) {
+      stateDelta.putAll(event.actions().stateDelta());
+      estimatedTokens += LoopCondition.estimatedTokens(event);
+      if (event.actions().escalate().orElse(false)) {
+        done = true;
+      }
+    }
+
+    private void check(int iteration, String after, List<LoopCondition> conditions) {
+      if (done || conditions.isEmpty()) {
+        return;
+      }
+      LoopCondition.Progress progress =
+          new LoopCondition.Progress(
+              iteration,
+              state(),
+              previousState,
+              Duration.ofNanos(System.nanoTime() - startNanos),
+              estimatedTokens);
+      for (LoopCondition condition : conditions) {
+        if (condition.isDone(progress)) {
+          logger.log(
+              Level.INFO,
+              () -> String.format("[%s] Exit condition met after %s.", name(), after));
+          done = true;
+          return;
+        }
+      }
+    }
+
+    private Map<String, Object> state() {
+      Map<String, Object> state = new LinkedHashMap<>(invocationContext.session().state());
+      state.putAll(stateDelta);
+      return state;
+    }
+  }
+
+  @Override
+  protected Flowable<Event> runLiveImpl(InvocationContext invocationContext) {
+    return Flowable.error(new UnsupportedOperationException("runLive not implemented."));
+  }
+
+  /** Builder for {@link ConvergingLoopAgent}. */
+  public static class Builder {
+    private String name;
+    private String description = "";
+    private List<? extends BaseAgent> subAgents = List.of();
+    private int maxIterations = Integer.MAX_VALUE;
+    private final List<LoopCondition> iterationConditions = new ArrayList<>();
+    private final Map<String, List<LoopCondition>> stepConditions = new HashMap<>();
+
+    public Builder name(String name) {
+      this.name = name;
+      return this;
+    }
+
+    public Builder description(String description) {
+      this.description = description;
+      return this;
+    }
+
+    public Builder subAgents(List<? extends BaseAgent> subAgents) {
+      this.subAgents = subAgents;
+      return this;
+    }
+
+    public Builder subAgents(BaseAgent... subAgents) {
+      return subAgents(List.of(subAgents));
+    }
+
+    public Builder maxIterations(int maxIterations) {
+      this.maxIterations = maxIterations;
+      return this;
+    }
+
+    /** Ends the loop when {@code condition} holds at the end of an iteration. */
+    public Builder exitWhen(LoopCondition condition) {
+      iterationConditions.add(condition);
+      return this;
+    }
+
+    /** Ends the loop when {@code condition} holds right after the named sub-agent. */
+    public Builder exitAfter(String subAgentName, LoopCondition condition) {
+      stepConditions.computeIfAbsent(subAgentName, name -> new ArrayList<>()).add(condition);
+      return this;
+    }
+
+    public ConvergingLoopAgent build() {
+      return new ConvergingLoopAgent(this);
+    }
+  }
+}
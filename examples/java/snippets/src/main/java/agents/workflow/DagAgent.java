@@ -0,0 +1,336 @@
+package agents.workflow;
+
+import com.google.adk.agents.BaseAgent;
+import com.google.adk.agents.InvocationContext;
+import com.google.adk.events.Event;
+import io.reactivex.rxjava3.core.BackpressureStrategy;
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.FlowableEmitter;
+import io.reactivex.rxjava3.disposables.CompositeDisposable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Runs sub-agents in the order implied by the session state keys they read and write, starting
+ * every sub-agent as soon as the ones it depends on have finished.
+ *
+ * <p>A sub-agent depends on the sub-agent that writes a key it reads. By default the keys are
+ * taken from {@link StateDependencies}; {@link Builder#node(BaseAgent, Set, Set)} declares them
+ * explicitly, which is needed when an instruction refers to a key in prose rather than as a
+ * {@code {key}} placeholder. Keys nobody writes must already be in the session state. Each key
+ * may only be written by one sub-agent, and the dependencies must not form a cycle; both are
+ * checked when the agent is built.
+ *
+ * <p>Each sub-agent runs on an {@code io()} scheduler thread. Their events are passed on one at a
+ * time, and a sub-agent's dependents start only after all of its events have been passed on.
+ *
+ * <p>For the post-processing stage of {@code StoryFlowAgentExample} this runs the grammar and
+ * tone checks concurrently, because both only read {@code current_story}:
+ *
+ * <pre>{@code
+ * DagAgent postProcessing =
+ *     DagAgent.builder()
+ *         .name("PostProcessing")
+ *         .node(grammarCheck, Set.of("current_story"), Set.of("grammar_suggestions"))
+ *         .node(toneCheck, Set.of("current_story"), Set.of("tone_check_result"))
+ *         .build();
+ * }</pre>
+ *
+ * <p>After each run the critical path (the chain of dependent sub-agents with the longest total
+ * duration) is logged and available from {@link #lastCriticalPath()}; it is the lower bound on the
+ * workflow latency and tells which sub-agents are worth speeding up.
+ */
+public class DagAgent extends BaseAgent {
+
+  private static final Logger logger = Logger.getLogger(DagAgent.class.getName());
+
+  private final List<BaseAgent> nodes;
+  // Indexes into nodes; upstream.get(i) are the nodes node i waits for.
+  private final List<Set<Integer>> upstream;
+  private final List<Set<Integer>> downstream;
+  private volatile String lastCriticalPath = "";
+
+  private DagAgent(String name, String description, Map<BaseAgent, Node> declared) {
+    super(name, description, new ArrayList<>(declared.keySet()), null, null);
+    this.nodes = new ArrayList<>(declared.keySet());
+    this.upstream = new ArrayList<>();
+    this.downstream = new ArrayList<>();
+    Map<String, Integer> writers = new HashMap<>();
+    for (int i = 0; i < nodes.size(); i++) {
+      upstream.add(new LinkedHashSet<>());
+      downstream.add(new LinkedHashSet<>());
+      for (String key : declared.get(nodes.get(i)).writes) {
+        Integer previous = writers.putIfAbsent(key, i);
+        if (previous != null) {
+          throw new IllegalArgumentException(
+              String.format(
+                  "State key '%s' is written by both %s and %s.",
+                  key, nodes.get(previous).name(), nodes.get(i).name()));
+        }
+      }
+    }
+    for (int i = 0; i < nodes.size(); i++) {
+      for (String key : declared.get(nodes.get(i)).reads) {
+        Integer writer = writers.get(key);
+        if (writer != null && writer != i) {
+          upstream.get(i).add(writer);
+          downstream.get(writer).add(i);
+        }
+      }
+    }
+    checkAcyclic();
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /** Names of the sub-agents the given sub-agent waits for. */
+  public List<String> dependencies(String subAgentName) {
+    for (int i = 0; i < nodes.size(); i++) {
+      if (nodes.get(i).name().equals(subAgentName)) {
+        return upstream.get(i).stream().map(j -> nodes.get(j).name()).collect(Collectors.toList());
+      }
+    }
+    throw new IllegalArgumentException("No sub-agent named " + subAgentName);
+  }
+
+  /** The critical path of the last completed run, e.g. {@code "A (900 ms) -> B (400 ms)"}. */
+  public String lastCriticalPath() {
+    return lastCriticalPath;
+  }
+
+  // Kahn's algorithm; whatever cannot be ordered is part of (or behind) a cycle.
+  private void checkAcyclic() {
+    int[] pending = new int[nodes.size()];
+    Deque<Integer> ready = new ArrayDeque<>();
+    for (int i = 0; i < nodes.size(); i++) {
+      pending[i] = upstream.get(i).size();
+      if (pending[i] == 0) {
+        ready.add(i);
+      }
+    }
+    int ordered = 0;
+    while (!ready.isEmpty()) {
+      int node = ready.poll();
+      ordered++;
+      for (int next : downstream.get(node)) {
+        if (--pending[next] == 0) {
+          ready.add(next);
+        }
+      }
+    }
+    if (ordered < nodes.size()) {
+      List<String> blocked = new ArrayList<>();
+      for (int i = 0; i < nodes.size(); i++) {
+        if (pending[i] > 0) {
+          blocked.add(nodes.get(i).name());
+        }
+      }
+      throw new IllegalArgumentException("State dependencies form a cycle between " + blocked);
+    }
+  }
+
+  @Override
+  protected Flowable<Event> runAsyncImpl(InvocationContext invocationContext) {
+    return Flowable.create(
+        emitter -> new Run(invocationContext, emitter).start(),
+        BackpressureStrategy.BUFFER);
+  }
+
+  /** State of one execution of the graph. */
+  private final class Run {
+    private final InvocationContext invocationContext;
+    private final FlowableEmitter<Event> emitter;
+    private final CompositeDisposable running = new CompositeDisposable();
+    // Events, errors and finished node indexes from all running nodes, handled one at a time in
+    // the order they arrived. Completions go through the same queue as events, so dependents
+    // start only after the events before them have been emitted.
+    private final Queue<Object> signals = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger signalsPending = new AtomicInteger();
+    private final int[] pending = new int[nodes.size()];
+    private final long[] startNanos = new long[nodes.size()];
+    private final long[] endNanos = new long[nodes.size()];
+    private final long runStartNanos = System.nanoTime();
+    private int finished;
+
+    Run(InvocationContext invocationContext, FlowableEmitter<Event> emitter) {
+      this.invocationContext = invocationContext;
+      this.emitter = emitter;
+      emitter.setDisposable(running);
+    }
+
+    void start() {
+      List<Integer> ready = new ArrayList<>();
+      synchronized (this) {
+        for (int i = 0; i < nodes.size(); i++) {
+          pending[i] = upstream.get(i).size();
+          if (pending[i] == 0) {
+            ready.add(i);
+          }
+        }
+      }
+      if (nodes.isEmpty()) {
+        emitter.onComplete();
+      }
+      ready.forEach(this::startNode);
+    }
+
+    private void startNode(int node) {
+      BaseAgent agent = nodes.get(node);
+      logger.log(Level.FINE, () -> String.format("[%s] Starting %s.", name(), agent.name()));
+      synchronized (this) {
+        startNanos[node] = System.nanoTime();
+      }
+      running.add(
+          agent
+              .runAsync(invocationContext)
+              .subscribeOn(Schedulers.io())
+              .subscribe(this::signal, this::signal, () -> signal(node)));
+    }
+
+    // Whichever thread finds the queue idle handles signals until it is empty again.
+    private void signal(Object signal) {
+      signals.add(signal);
+      if (signalsPending.getAndIncrement() != 0) {
+        return;
+      }
+      do {
+        Object next = signals.poll();
+        if (next instanceof Event) {
+          emitter.onNext((Event) next);
+        } else if (next instanceof Throwable) {
+          emitter.onError((Throwable) next);
+        } else {
+          nodeFinished((Integer) next);
+        }
+      } while (signalsPending.decrementAndGet() != 0);
+    }
+
+    private void nodeFinished(int node) {
+      List<Integer> ready = new ArrayList<>();
+      boolean allFinished;
+      synchronized (this) {
+        endNanos[node] = System.nanoTime();
+        for (int next : downstream.get(node)) {
+          if (--pending[next] == 0) {
+            ready.add(next);
+          }
+        }
+        allFinished = ++finished == nodes.size();
+      }
+      if (allFinished) {
+        reportCriticalPath();
+        emitter.onComplete();
+        return;
+      }
+      ready.forEach(this::startNode);
+    }
+
+    // Longest chain of dependent nodes by total duration, walking back from the node that
+    // finished last along the upstream node that finished last.
+    private synchronized void reportCriticalPath() {
+      int node = 0;
+      for (int i = 1; i < nodes.size(); i++) {
+        if (endNanos[i] > endNanos[node]) {
+          node = i;
+        }
+      }
+      List<String> path = new ArrayList<>();
+      long pathMillis = 0;
+      while (true) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(endNanos[node] - startNanos[node]);
+        pathMillis += millis;
+        path.add(0, String.format("%s (%d ms)", nodes.get(node).name(), millis));
+        int critical = -1;
+        for (int previous : upstream.get(node)) {
+          if (critical < 0 || endNanos[previous] > endNanos[critical]) {
+            critical = previous;
+          }
+        }
+        if (critical < 0) {
+          break;
+        }
+        node = critical;
+      }
+      lastCriticalPath = String.join(" -> ", path);
+      long totalMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - runStartNanos);
+      long criticalMillis = pathMillis;
+      logger.log(
+          Level.INFO,
+          () ->
+              String.format(
+                  "[%s] Finished in %d ms; critical path %d ms: %s",
+                  name(), totalMillis, criticalMillis, lastCriticalPath));
+    }
+  }
+
+  @Override
+  protected Flowable<Event> runLiveImpl(InvocationContext invocationContext) {
+    return Flowable.error(new UnsupportedOperationException("runLive not implemented."));
+  }
+
+  private static final class Node {
+    final Set<String> reads;
+    final Set<String> writes;
+
+    Node(Set<String> reads, Set<String> writes) {
+      this.reads = reads;
+      this.writes = writes;
+    }
+  }
+
+  /** Builder for {@link DagAgent}. */
+  public static class Builder {
+    private String name;
+    private String description = "";
+    private final Map<BaseAgent, Node> nodes = new LinkedHashMap<>();
+
+    public Builder name(String name) {
+      this.name = name;
+      return this;
+    }
+
+    public Builder description(String description) {
+      this.description = description;
+      return this;
+    }
+
+    /** Adds a sub-agent whose dependencies are derived by {@link StateDependencies}. */
+    public Builder node(BaseAgent agent) {
+      return node(agent, StateDependencies.reads(agent), StateDependencies.writes(agent));
+    }
+
+    /** Adds a sub-agent that reads and writes the given state keys. */
+    public Builder node(BaseAgent agent, Set<String> reads, Set<String> writes) {
+      nodes.put(agent, new Node(Set.copyOf(reads), Set.copyOf(writes)));
+      return this;
+    }
+
+    public Builder nodes(BaseAgent... agents) {
+      for (BaseAgent agent : agents) {
+        node(agent);
+      }
+      return this;
+    }
+
+    public DagAgent build() {
+      return new DagAgent(name, description, nodes);
+    }
+  }
+}
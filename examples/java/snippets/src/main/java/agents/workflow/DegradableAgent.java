@@ -0,0 +1,129 @@
+package agents.workflow;
+
+import com.google.adk.agents.BaseAgent;
+import com.google.adk.agents.InvocationContext;
+import com.google.adk.events.Event;
+import io.reactivex.rxjava3.core.Flowable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs a stage normally while the {@link WorkflowBudget} of the invocation is healthy, and a
+ * cheaper variant of it (or nothing) once less than {@code threshold} of the budget is left.
+ *
+ * <p>The variant is any agent: the same {@code LlmAgent} on a cheaper model, a {@code LoopAgent}
+ * with fewer iterations, or no agent at all for optional stages such as the conditional
+ * regeneration of {@code StoryFlowAgentExample}. Outside a {@link BudgetedWorkflowAgent} the stage
+ * always runs normally.
+ *
+ * <pre>{@code
+ * BaseAgent refinement =
+ *     DegradableAgent.builder(refinementLoop).whenLow(shortRefinementLoop).threshold(0.5).build();
+ * BaseAgent regeneration = DegradableAgent.builder(storyGenerator).skipWhenLow().build();
+ * }</pre>
+ */
+public class DegradableAgent extends BaseAgent {
+
+  private static final Logger logger = Logger.getLogger(DegradableAgent.class.getName());
+
+  private final BaseAgent primary;
+  private final BaseAgent degraded;
+  private final double threshold;
+
+  private DegradableAgent(Builder builder) {
+    super(
+        builder.name,
+        builder.primary.description(),
+        subAgents(builder.primary, builder.degraded),
+        null,
+        null);
+    this.primary = builder.primary;
+    this.degraded = builder.degraded;
+    this.threshold = builder.threshold;
+  }
+
+  private static List<BaseAgent> subAgents(BaseAgent primary, BaseAgent degraded) {
+    List<BaseAgent> subAgents = new ArrayList<>();
+    subAgents.add(primary);
+    if (degraded != null) {
+      subAgents.add(degraded);
+    }
+    return subAgents;
+  }
+
+  public static Builder builder(BaseAgent primary) {
+    return new Builder(primary);
+  }
+
+  @Override
+  protected Flowable<Event> runAsyncImpl(InvocationContext invocationContext) {
+    return Flowable.defer(
+        () -> {
+          double remaining =
+              WorkflowBudget.of(invocationContext)
+                  .map(WorkflowBudget::remainingFraction)
+                  .orElse(1.0);
+          if (remaining >= threshold) {
+            return primary.runAsync(invocationContext);
+          }
+          logger.log(
+              Level.INFO,
+              () ->
+                  String.format(
+                      "[%s] %.0f%% of the budget left, %s.",
+                      name(),
+                      remaining * 100,
+                      degraded == null
+                          ? "skipping " + primary.name()
+                          : "running " + degraded.name() + " instead of " + primary.name()));
+          return degraded == null ? Flowable.empty() : degraded.runAsync(invocationContext);
+        });
+  }
+
+  @Override
+  protected Flowable<Event> runLiveImpl(InvocationContext invocationContext) {
+    return Flowable.error(new UnsupportedOperationException("runLive not implemented."));
+  }
+
+  /** Builder for {@link DegradableAgent}. */
+  public static class Builder {
+    private final BaseAgent primary;
+    private String name;
+    private BaseAgent degraded;
+    private double threshold = 0.25;
+
+    private Builder(BaseAgent primary) {
+      this.primary = primary;
+      this.name = primary.name() + "Degradable";
+    }
+
+    public Builder name(String name) {
+      this.name = name;
+      return this;
+    }
+
+    /** Agent to run instead of the primary one when the budget is low. */
+    public Builder whenLow(BaseAgent degraded) {
+      this.degraded = degraded;
+      return this;
+    }
+
+    /** Skips the stage when the budget is low. */
+    public Builder skipWhenLow() {
+      this.degraded = null;
+      return this;
+    }
+
+    /** Share of the budget (0 to 1) below which the stage degrades; 0.25 by default. */
+    public Builder threshold(double threshold) {
+      this.threshold = threshold;
+      return this;
+    }
+
+    public DegradableAgent build() {
+      return new DegradableAgent(this);
+    }
+  }
+}
@@ -0,0 +1,51 @@
+package agents.workflow;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+
+/**
+ * Keeps each checkpoint as a JSON file in a local directory. Files are replaced atomically, so a
+ * crash while saving leaves the previous checkpoint intact.
+ */
+public final class FileCheckpointStore implements CheckpointStore {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private final Path directory;
+
+  public FileCheckpointStore(Path directory) throws IOException {
+    this.directory = Files.createDirectories(directory);
+  }
+
+  @Override
+  public Optional<Checkpoint> load(String key) throws IOException {
+    Path file = file(key);
+    if (!Files.exists(file)) {
+      return Optional.empty();
+    }
+    return Optional.of(MAPPER.readValue(Files.readAllBytes(file), Checkpoint.class));
+  }
+
+  @Override
+  public void save(String key, Checkpoint checkpoint) throws IOException {
+    Path file = file(key);
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    Files.write(tmp, MAPPER.writeValueAsBytes(checkpoint));
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  @Override
+  public void delete(String key) throws IOException {
+    Files.deleteIfExists(file(key));
+  }
+
+  private Path file(String key) {
+    return directory.resolve(URLEncoder.encode(key, StandardCharsets.UTF_8) + ".json");
+  }
+}
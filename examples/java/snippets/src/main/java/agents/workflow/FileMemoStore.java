@@ -0,0 +1,60 @@
+package agents.workflow;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Keeps memos as JSON files in a local directory, one subdirectory per agent. Files are replaced
+ * atomically, so concurrent runs with the same key never leave a partial memo behind.
+ */
+public final class FileMemoStore implements MemoStore {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private final Path directory;
+
+  public FileMemoStore(Path directory) throws IOException {
+    this.directory = Files.createDirectories(directory);
+  }
+
+  @Override
+  public Optional<Memo> load(String agentName, String key) throws IOException {
+    Path file = agentDirectory(agentName).resolve(key + ".json");
+    if (!Files.exists(file)) {
+      return Optional.empty();
+    }
+    return Optional.of(MAPPER.readValue(Files.readAllBytes(file), Memo.class));
+  }
+
+  @Override
+  public void save(String agentName, String key, Memo memo) throws IOException {
+    Path file = Files.createDirectories(agentDirectory(agentName)).resolve(key + ".json");
+    Path tmp = Files.createTempFile(file.getParent(), key, ".tmp");
+    Files.write(tmp, MAPPER.writeValueAsBytes(memo));
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  @Override
+  public void invalidate(String agentName) throws IOException {
+    Path agentDirectory = agentDirectory(agentName);
+    if (!Files.exists(agentDirectory)) {
+      return;
+    }
+    try (Stream<Path> files = Files.list(agentDirectory)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+
+  private Path agentDirectory(String agentName) {
+    return directory.resolve(URLEncoder.encode(agentName, StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,174 @@
+package agents.workflow;
+
+import com.google.adk.agents.BaseAgent;
+import com.google.adk.agents.InvocationContext;
+import com.google.adk.events.Event;
+import io.reactivex.rxjava3.core.Flowable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs a sub-agent and, if it is slower than usual, starts a second run of it and keeps whichever
+ * finishes first.
+ *
+ * <p>The latency of every completed run is recorded in the {@link LatencyHistogram} of the wrapped
+ * agent. Once {@code minSamples} runs have been recorded, a run that has not finished after the
+ * {@code hedgePercentile} latency gets a duplicate; the slower of the two is cancelled as soon as
+ * the other one finishes. At most {@code maxExtraLoadPercent} of the runs are hedged, so a slow
+ * model does not get twice the traffic.
+ *
+ * <p>Each run's events are collected and only the winner's are emitted, which means the wrapped
+ * agent must produce its answer in a single model turn (no function tools) and must be safe to
+ * run twice, like the researchers in {@code ParallelResearchPipeline} or the {@code
+ * CodeWriterAgent} in {@code SequentialAgentExample}.
+ *
+ * <pre>{@code
+ * BaseAgent researcher = HedgedAgent.builder(researcherAgent1).hedgePercentile(95).build();
+ * }</pre>
+ */
+public class HedgedAgent extends BaseAgent {
+
+  private static final Logger logger = Logger.getLogger(HedgedAgent.class.getName());
+
+  private final BaseAgent delegate;
+  private final LatencyHistogram latencies;
+  private final double hedgePercentile;
+  private final double maxExtraLoadPercent;
+  private final long minSamples;
+  private final AtomicLong runs = new AtomicLong();
+  private final AtomicLong hedges = new AtomicLong();
+  private final AtomicLong hedgeWins = new AtomicLong();
+
+  private HedgedAgent(Builder builder) {
+    super(builder.name, builder.delegate.description(), List.of(builder.delegate), null, null);
+    this.delegate = builder.delegate;
+    this.latencies = LatencyHistogram.forAgent(builder.delegate.name());
+    this.hedgePercentile = builder.hedgePercentile;
+    this.maxExtraLoadPercent = builder.maxExtraLoadPercent;
+    this.minSamples = builder.minSamples;
+  }
+
+  public static Builder builder(BaseAgent delegate) {
+    return new Builder(delegate);
+  }
+
+  /** Number of runs, of hedged runs and of runs won by the hedge. */
+  public Map<String, Long> stats() {
+    return Map.of("runs", runs.get(), "hedges", hedges.get(), "hedgeWins", hedgeWins.get());
+  }
+
+  @Override
+  protected Flowable<Event> runAsyncImpl(InvocationContext invocationContext) {
+    return Flowable.defer(
+        () -> {
+          runs.incrementAndGet();
+          Flowable<List<Event>> primary = attempt(invocationContext, false);
+          long hedgeDelay =
+              latencies.count() >= minSamples ? latencies.percentile(hedgePercentile) : -1;
+          if (hedgeDelay < 0) {
+            return primary.concatMap(Flowable::fromIterable);
+          }
+          Flowable<List<Event>> hedge =
+              Flowable.timer(hedgeDelay, TimeUnit.MILLISECONDS)
+                  .concatMap(
+                      tick -> {
+                        if (!reserveHedge()) {
+                          return Flowable.never();
+                        }
+                        logger.log(
+                            Level.INFO,
+                            () ->
+                                String.format(
+                                    "[%s] %s still running after %d ms, starting a hedge.",
+                                    name(), delegate.name(), hedgeDelay));
+                        return attempt(invocationContext, true);
+                      });
+          // The first run to deliver its events wins; the other one is cancelled.
+          return Flowable.ambArray(primary, hedge).concatMap(Flowable::fromIterable);
+        });
+  }
+
+  private Flowable<List<Event>> attempt(InvocationContext invocationContext, boolean isHedge) {
+    return Flowable.defer(
+        () -> {
+          long start = System.nanoTime();
+          return delegate
+              .runAsync(invocationContext)
+              .toList()
+              .toFlowable()
+              .doOnNext(
+                  events -> {
+                    latencies.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    if (isHedge) {
+                      hedgeWins.incrementAndGet();
+                    }
+                  });
+        });
+  }
+
+  // Allows a hedge only while hedged runs stay within maxExtraLoadPercent of all runs.
+  private boolean reserveHedge() {
+    long current;
+    do {
+      current = hedges.get();
+      if ((current + 1) * 100 > runs.get() * maxExtraLoadPercent) {
+        return false;
+      }
+    } while (!hedges.compareAndSet(current, current + 1));
+    return true;
+  }
+
+  @Override
+  protected Flowable<Event> runLiveImpl(InvocationContext invocationContext) {
+    return Flowable.error(new UnsupportedOperationException("runLive not implemented."));
+  }
+
+  /** Builder for {@link HedgedAgent}. */
+  public static class Builder {
+    private final BaseAgent delegate;
+    private String name;
+    private double hedgePercentile = 95;
+    private double maxExtraLoadPercent = 10;
+    private long minSamples = 20;
+
+    private Builder(BaseAgent delegate) {
+      this.delegate = delegate;
+      this.name = delegate.name() + "Hedged";
+    }
+
+    public Builder name(String name) {
+      this.name = name;
+      return this;
+    }
+
+    /** Latency percentile after which a duplicate run is started; 95 by default. */
+    public Builder hedgePercentile(double hedgePercentile) {
+      if (hedgePercentile <= 0 || hedgePercentile >= 100) {
+        throw new IllegalArgumentException(
+            "hedgePercentile must be between 0 and 100: " + hedgePercentile);
+      }
+      this.hedgePercentile = hedgePercentile;
+      return this;
+    }
+
+    /** Maximum share of runs, in percent, that may be hedged; 10 by default. */
+    public Builder maxExtraLoadPercent(double maxExtraLoadPercent) {
+      this.maxExtraLoadPercent = maxExtraLoadPercent;
+      return this;
+    }
+
+    /** Number of recorded runs needed before hedging starts; 20 by default. */
+    public Builder minSamples(long minSamples) {
+      this.minSamples = minSamples;
+      return this;
+    }
+
+    public HedgedAgent build() {
+      return new HedgedAgent(this);
+    }
+  }
+}
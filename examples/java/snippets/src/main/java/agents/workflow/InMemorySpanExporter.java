@@ -0,0 +1,41 @@
+package agents.workflow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps finished spans in memory, for checking locally what a workflow did and how long each part
+ * took.
+ *
+ * <pre>{@code
+ * InMemorySpanExporter spans = new InMemorySpanExporter();
+ * BaseAgent traced = new AgentTracer(spans, 1.0).trace(storyFlowAgent);
+ * // ... run the agent ...
+ * spans.spans().forEach(System.out::println);
+ * }</pre>
+ */
+public final class InMemorySpanExporter implements SpanExporter {
+
+  private final List<AgentSpan> spans = new ArrayList<>();
+
+  @Override
+  public synchronized void export(AgentSpan span) {
+    spans.add(span);
+  }
+
+  /** The finished spans in the order they ended. */
+  public synchronized List<AgentSpan> spans() {
+    return new ArrayList<>(spans);
+  }
+
+  public synchronized List<AgentSpan> spans(String traceId) {
+    return spans.stream()
+        .filter(span -> span.traceId().equals(traceId))
+        .collect(Collectors.toList());
+  }
+
+  public synchronized void reset() {
+    spans.clear();
+  }
+}
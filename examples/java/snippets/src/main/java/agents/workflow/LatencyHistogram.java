@@ -0,0 +1,61 @@
+package agents.workflow;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with logarithmic buckets, one per agent name.
+ *
+ * <p>Bucket {@code i} counts latencies up to {@code 1ms * 1.2^i}, which covers 1 millisecond to
+ * roughly an hour with a relative error of at most 20%. That is precise enough to pick a hedge
+ * delay and cheap enough to record on every run.
+ */
+public final class LatencyHistogram {
+
+  private static final double GROWTH = 1.2;
+  private static final int BUCKETS = 85;
+  private static final Map<String, LatencyHistogram> BY_AGENT = new ConcurrentHashMap<>();
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder total = new LongAdder();
+
+  /** The shared histogram for the agent with the given name. */
+  public static LatencyHistogram forAgent(String agentName) {
+    return BY_AGENT.computeIfAbsent(agentName, name -> new LatencyHistogram());
+  }
+
+  public void record(long millis) {
+    int bucket =
+        millis <= 1
+            ? 0
+            : (int) Math.min(BUCKETS - 1, Math.ceil(Math.log(millis) / Math.log(GROWTH)));
+    counts.incrementAndGet(bucket);
+    total.increment();
+  }
+
+  public long count() {
+    return total.sum();
+  }
+
+  /**
+   * Upper bound in milliseconds of the latency below which {@code percentile} percent of the
+   * recorded runs finished, or -1 if nothing has been recorded.
+   */
+  public long percentile(double percentile) {
+    long count = count();
+    if (count == 0) {
+      return -1;
+    }
+    long rank = (long) Math.ceil(count * percentile / 100);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts.get(i);
+      if (seen >= Math.max(rank, 1)) {
+        return (long) Math.ceil(Math.pow(GROWTH, i));
+      }
+    }
+    return (long) Math.ceil(Math.pow(GROWTH, BUCKETS - 1));
+  }
+}
@@ -0,0 +1,157 @@
+package agents.workflow;
+
+import com.google.adk.events.Event;
+import com.google.genai.types.Content;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Cheap check on the session state that ends a {@link ConvergingLoopAgent} without another model
+ * turn.
+ */
+@FunctionalInterface
+public interface LoopCondition {
+
+  boolean isDone(Progress progress);
+
+  /** Ends the loop when the value of {@code key} equals {@code value}, ignoring outer whitespace. */
+  static LoopCondition stateEquals(String key, String value) {
+    return progress -> {
+      Object current = progress.state().get(key);
+      return current != null && current.toString().strip().equals(value.strip());
+    };
+  }
+
+  /**
+   * Ends the loop when the state value of {@code key} changed by at most {@code maxChangeRatio}
+   * (edit distance divided by the length of the longer version) since the previous iteration.
+   */
+  static LoopCondition converged(String key, double maxChangeRatio) {
+    return progress -> {
+      Object previous = progress.previousState().get(key);
+      Object current = progress.state().get(key);
+      if (previous == null || current == null) {
+        return false;
+      }
+      String before = previous.toString();
+      String after = current.toString();
+      int maxDistance = (int) (Math.max(before.length(), after.length()) * maxChangeRatio);
+      return editDistanceWithin(before, after, maxDistance);
+    };
+  }
+
+  /** Ends the loop once the loop's events carry about {@code maxTokens} tokens of text. */
+  static LoopCondition maxTokens(long maxTokens) {
+    return progress -> progress.estimatedTokens() >= maxTokens;
+  }
+
+  /** Ends the loop once it has been running for {@code maxDuration}. */
+  static LoopCondition maxDuration(Duration maxDuration) {
+    return progress -> progress.elapsed().compareTo(maxDuration) >= 0;
+  }
+
+  default LoopCondition or(LoopCondition other) {
+    Objects.requireNonNull(other);
+    return progress -> isDone(progress) || other.isDone(progress);
+  }
+
+  /**
+   * Whether the Levenshtein distance of {@code a} and {@code b} is at most {@code maxDistance}.
+   * Only a band of {@code 2 * maxDistance + 1} cells per row is computed, and the scan stops as
+   * soon as every cell in a row exceeds the limit.
+   */
+  static boolean editDistanceWithin(String a, String b, int maxDistance) {
+    if (Math.abs(a.length() - b.length()) > maxDistance) {
+      return false;
+    }
+    int outside = maxDistance + 1;
+    int[] previous = new int[b.length() + 1];
+    int[] current = new int[b.length() + 1];
+    for (int j = 0; j <= b.length(); j++) {
+      previous[j] = j <= maxDistance ? j : outside;
+    }
+    for (int i = 1; i <= a.length(); i++) {
+      int from = Math.max(1, i - maxDistance);
+      int to = Math.min(b.length(), i + maxDistance);
+      current[0] = i <= maxDistance ? i : outside;
+      if (from > 1) {
+        current[from - 1] = outside;
+      }
+      int rowMin = current[0];
+      for (int j = from; j <= to; j++) {
+        int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+        int value =
+            Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+        current[j] = Math.min(value, outside);
+        rowMin = Math.min(rowMin, current[j]);
+      }
+      if (to < b.length()) {
+        current[to + 1] = outside;
+      }
+      if (rowMin > maxDistance) {
+        return false;
+      }
+      int[] swap = previous;
+      previous = current;
+      current = swap;
+    }
+    return previous[b.length()] <= maxDistance;
+  }
+
+  /** Rough token count of an event's text, at about four characters per token. */
+  static long estimatedTokens(Event event) {
+    long characters =
+        event.content().flatMap(Content::parts).orElse(List.of()).stream()
+            .mapToLong(part -> part.text().map(String::length).orElse(0))
+            .sum();
+    return (characters + 3) / 4;
+  }
+
+  /** What a condition can look at after a loop step. */
+  final class Progress {
+    private final int iteration;
+    private final Map<String, Object> state;
+    private final Map<String, Object> previousState;
+    private final Duration elapsed;
+    private final long estimatedTokens;
+
+    Progress(
+        int iteration,
+        Map<String, Object> state,
+        Map<String, Object> previousState,
+        Duration elapsed,
+        long estimatedTokens) {
+      this.iteration = iteration;
+      this.state = state;
+      this.previousState = previousState;
+      this.elapsed = elapsed;
+      this.estimatedTokens = estimatedTokens;
+    }
+
+    /** Iteration that just ran, starting at 0. */
+    public int iteration() {
+      return iteration;
+    }
+
+    /** Session state including the changes made so far in this iteration. */
+    public Map<String, Object> state() {
+      return state;
+    }
+
+    /** Session state at the end of the previous iteration (before the loop for iteration 0). */
+    public Map<String, Object> previousState() {
+      return previousState;
+    }
+
+    public Duration elapsed() {
+      return elapsed;
+    }
+
+    /** Tokens in the text of all events the loop emitted so far; see {@link #estimatedTokens}. */
+    public long estimatedTokens() {
+      return estimatedTokens;
+    }
+  }
+}
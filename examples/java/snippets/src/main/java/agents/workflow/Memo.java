@@ -0,0 +1,31 @@
+package agents.workflow;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Recorded run of a {@link MemoizedAgent}: the JSON of the events it emitted, whose actions carry
+ * the state delta of the run, and when it was recorded.
+ *
+ * <p>Public fields and a no-argument constructor keep the class serializable with Jackson.
+ */
+public final class Memo {
+
+  /** Time the run finished, in epoch milliseconds. */
+  public long createdMillis;
+
+  /** Events of the run as produced by {@code Event.toJson()}, in order. */
+  public List<String> events = new ArrayList<>();
+
+  public Memo() {}
+
+  Memo(long createdMillis, List<String> events) {
+    this.createdMillis = createdMillis;
+    this.events = new ArrayList<>(events);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d events recorded at %d", events.size(), createdMillis);
+  }
+}
@@ -0,0 +1,15 @@
+package agents.workflow;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/** Stores the {@link Memo}s of memoized agents, grouped by agent name. */
+public interface MemoStore {
+
+  Optional<Memo> load(String agentName, String key) throws IOException;
+
+  void save(String agentName, String key, Memo memo) throws IOException;
+
+  /** Removes every memo of the agent, e.g. after its prompt or tools changed. */
+  void invalidate(String agentName) throws IOException;
+}
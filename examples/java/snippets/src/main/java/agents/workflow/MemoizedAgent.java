@@ -0,0 +1,235 @@
+package agents.workflow;
+
+import com.google.adk.agents.BaseAgent;
+import com.google.adk.agents.InvocationContext;
+import com.google.adk.agents.LlmAgent;
+import com.google.adk.events.Event;
+import com.google.adk.models.Model;
+import com.google.genai.types.Content;
+import io.reactivex.rxjava3.core.Flowable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs a sub-agent once per distinct input and replays the recorded events, including their state
+ * deltas, whenever the same input comes up again.
+ *
+ * <p>The input is identified by the name, model and rendered instruction of every {@link
+ * LlmAgent} in the wrapped agent's tree, the user message of the invocation, and the values of the
+ * state keys the tree reads according to {@link StateDependencies} (plus any keys declared with
+ * {@link Builder#reads}). {@link Builder#ignoreUserContent} leaves the user message out, for
+ * agents that never see it. A replayed run makes no model calls. Memos expire after {@code ttl},
+ * and {@link #invalidate()} drops all memos of the agent, e.g. after a tool it uses started
+ * returning different data.
+ *
+ * <p>Only runs that complete are recorded; partial streaming events are not. The wrapped agent
+ * should not depend on anything besides its inputs, such as the current date or a tool with
+ * changing results, unless a stale answer within {@code ttl} is acceptable.
+ *
+ * <pre>{@code
+ * BaseAgent researcher =
+ *     MemoizedAgent.builder(researcherAgent1)
+ *         .store(new FileMemoStore(Path.of("memos")))
+ *         .ttl(Duration.ofDays(1))
+ *         .build();
+ * }</pre>
+ */
+public class MemoizedAgent extends BaseAgent {
+
+  private static final Logger logger = Logger.getLogger(MemoizedAgent.class.getName());
+
+  private final BaseAgent delegate;
+  private final MemoStore store;
+  private final Duration ttl;
+  private final Set<String> reads;
+  private final boolean ignoreUserContent;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  private MemoizedAgent(Builder builder) {
+    super(builder.name, builder.delegate.description(), List.of(builder.delegate), null, null);
+    if (builder.store == null) {
+      throw new IllegalArgumentException("A MemoStore is required.");
+    }
+    this.delegate = builder.delegate;
+    this.store = builder.store;
+    this.ttl = builder.ttl;
+    this.reads = new TreeSet<>(StateDependencies.reads(builder.delegate));
+    this.reads.addAll(builder.reads);
+    this.ignoreUserContent = builder.ignoreUserContent;
+  }
+
+  public static Builder builder(BaseAgent delegate) {
+    return new Builder(delegate);
+  }
+
+  /** Number of replayed and of executed runs. */
+  public Map<String, Long> stats() {
+    return Map.of("hits", hits.get(), "misses", misses.get());
+  }
+
+  /** Drops every memo of the wrapped agent. */
+  public void invalidate() throws IOException {
+    store.invalidate(delegate.name());
+  }
+
+  @Override
+  protected Flowable<Event> runAsyncImpl(InvocationContext invocationContext) {
+    return Flowable.defer(
+        () -> {
+          String key = key(invocationContext);
+          Optional<Memo> memo = load(key);
+          if (memo.isPresent()) {
+            hits.incrementAndGet();
+            logger.log(
+                Level.FINE, () -> String.format("[%s] Replaying %s.", name(), memo.get()));
+            return Flowable.fromIterable(memo.get().events)
+                .map(json -> replay(json, invocationContext));
+          }
+          misses.incrementAndGet();
+          List<String> recorded = new ArrayList<>();
+          return delegate
+              .runAsync(invocationContext)
+              .doOnNext(
+                  event -> {
+                    if (!event.partial().orElse(false)) {
+                      recorded.add(event.toJson());
+                    }
+                  })
+              .doOnComplete(() -> save(key, new Memo(System.currentTimeMillis(), recorded)));
+        });
+  }
+
+  private Optional<Memo> load(String key) {
+    try {
+      return store
+          .load(delegate.name(), key)
+          .filter(memo -> System.currentTimeMillis() - memo.createdMillis <= ttl.toMillis());
+    } catch (IOException e) {
+      logger.log(Level.WARNING, String.format("[%s] Could not load memo %s.", name(), key), e);
+      return Optional.empty();
+    }
+  }
+
+  private void save(String key, Memo memo) {
+    try {
+      store.save(delegate.name(), key, memo);
+    } catch (IOException e) {
+      logger.log(Level.WARNING, String.format("[%s] Could not save memo %s.", name(), key), e);
+    }
+  }
+
+  private static Event replay(String json, InvocationContext invocationContext) {
+    return Event.fromJson(json).toBuilder()
+        .id(Event.generateEventId())
+        .invocationId(invocationContext.invocationId())
+        .timestamp(System.currentTimeMillis())
+        .build();
+  }
+
+  private String key(InvocationContext invocationContext) throws NoSuchAlgorithmException {
+    Map<String, Object> state = invocationContext.session().state();
+    StringBuilder input = new StringBuilder();
+    describe(delegate, state, input);
+    if (!ignoreUserContent) {
+      input
+          .append("user\0")
+          .append(invocationContext.userContent().map(Content::toJson).orElse(""))
+          .append('\0');
+    }
+    for (String read : reads) {
+      input.append("state\0").append(read).append('\0').append(state.get(read)).append('\0');
+    }
+    MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+    byte[] digest = sha256.digest(input.toString().getBytes(StandardCharsets.UTF_8));
+    StringBuilder hex = new StringBuilder();
+    for (byte b : digest) {
+      hex.append(String.format("%02x", b));
+    }
+    return hex.toString();
+  }
+
+  private static void describe(BaseAgent agent, Map<String, Object> state, StringBuilder input) {
+    input.append("agent\0").append(agent.name()).append('\0');
+    if (agent instanceof LlmAgent) {
+      LlmAgent llmAgent = (LlmAgent) agent;
+      input.append(llmAgent.model().flatMap(Model::modelName).orElse("")).append('\0');
+      input
+          .append(
+              llmAgent.instruction().map(text -> StateDependencies.render(text, state)).orElse(""))
+          .append('\0');
+    }
+    for (BaseAgent subAgent : agent.subAgents()) {
+      describe(subAgent, state, input);
+    }
+  }
+
+  @Override
+  protected Flowable<Event> runLiveImpl(InvocationContext invocationContext) {
+    return Flowable.error(new UnsupportedOperationException("runLive not implemented."));
+  }
+
+  /** Builder for {@link MemoizedAgent}. */
+  public static class Builder {
+    private final BaseAgent delegate;
+    private String name;
+    private MemoStore store;
+    private Duration ttl = Duration.ofDays(1);
+    private final Set<String> reads = new LinkedHashSet<>();
+    private boolean ignoreUserContent;
+
+    private Builder(BaseAgent delegate) {
+      this.delegate = delegate;
+      this.name = delegate.name() + "Memoized";
+    }
+
+    public Builder name(String name) {
+      this.name = name;
+      return this;
+    }
+
+    public Builder store(MemoStore store) {
+      this.store = store;
+      return this;
+    }
+
+    /** How long a recorded run is replayed; one day by default. */
+    public Builder ttl(Duration ttl) {
+      this.ttl = ttl;
+      return this;
+    }
+
+    /** State keys the agent reads that {@link StateDependencies} cannot detect. */
+    public Builder reads(String... keys) {
+      reads.addAll(List.of(keys));
+      return this;
+    }
+
+    /**
+     * Leaves the user message out of the memo key, so runs for different messages share a memo.
+     * Only correct if the agent does not see the message, e.g. because every {@link LlmAgent} in
+     * its tree has {@code includeContents(NONE)}.
+     */
+    public Builder ignoreUserContent() {
+      this.ignoreUserContent = true;
+      return this;
+    }
+
+    public MemoizedAgent build() {
+      return new MemoizedAgent(this);
+    }
+  }
+}
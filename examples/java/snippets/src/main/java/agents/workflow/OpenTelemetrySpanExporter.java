@@ -0,0 +1,99 @@
+package agents.workflow;
+
+import com.google.adk.events.Event;
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanBuilder;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Forwards finished spans to OpenTelemetry, the tracing API ADK itself reports to.
+ *
+ * <p>Spans are buffered per trace until the root span ends and are then replayed, parents first
+ * and with their recorded timestamps, so the collector receives the same tree the workflow ran.
+ * With {@code includeEvents} every event of a span is attached to it as a span event carrying the
+ * event JSON.
+ */
+public final class OpenTelemetrySpanExporter implements SpanExporter {
+
+  private static final AttributeKey<String> EVENT_JSON = AttributeKey.stringKey("adk.event.json");
+
+  private final Tracer tracer;
+  private final boolean includeEvents;
+  private final Map<String, List<AgentSpan>> pending = new HashMap<>();
+
+  public OpenTelemetrySpanExporter(Tracer tracer, boolean includeEvents) {
+    this.tracer = tracer;
+    this.includeEvents = includeEvents;
+  }
+
+  /** Exports to the globally registered OpenTelemetry SDK, without event payloads. */
+  public OpenTelemetrySpanExporter() {
+    this(GlobalOpenTelemetry.getTracer("adk-workflow"), false);
+  }
+
+  @Override
+  public void export(AgentSpan span) {
+    List<AgentSpan> trace;
+    synchronized (pending) {
+      trace = pending.computeIfAbsent(span.traceId(), id -> new ArrayList<>());
+      trace.add(span);
+      if (span.parentSpanId() != null) {
+        return;
+      }
+      pending.remove(span.traceId());
+    }
+    Map<String, List<AgentSpan>> children = new HashMap<>();
+    for (AgentSpan child : trace) {
+      if (child.parentSpanId() != null) {
+        children.computeIfAbsent(child.parentSpanId(), id -> new ArrayList<>()).add(child);
+      }
+    }
+    replay(span, Context.root(), children);
+  }
+
+  private void replay(AgentSpan span, Context parent, Map<String, List<AgentSpan>> children) {
+    SpanBuilder builder =
+        tracer
+            .spanBuilder(span.kind() + " [" + span.name() + "]")
+            .setParent(parent)
+            .setStartTimestamp(span.startEpochNanos(), TimeUnit.NANOSECONDS);
+    span.attributes()
+        .forEach(
+            (key, value) -> {
+              if (value instanceof Long) {
+                builder.setAttribute(key, (long) value);
+              } else {
+                builder.setAttribute(key, String.valueOf(value));
+              }
+            });
+    Span otelSpan = builder.startSpan();
+    if (includeEvents) {
+      for (Event event : span.events()) {
+        otelSpan.addEvent(
+            "adk.event",
+            Attributes.of(EVENT_JSON, event.toJson()),
+            event.timestamp(),
+            TimeUnit.MILLISECONDS);
+      }
+    }
+    if (span.error() != null) {
+      otelSpan.recordException(span.error());
+      otelSpan.setStatus(StatusCode.ERROR, span.error().toString());
+    }
+    Context context = otelSpan.storeInContext(parent);
+    for (AgentSpan child : children.getOrDefault(span.spanId(), List.of())) {
+      replay(child, context, children);
+    }
+    otelSpan.end(span.endEpochNanos(), TimeUnit.NANOSECONDS);
+  }
+}
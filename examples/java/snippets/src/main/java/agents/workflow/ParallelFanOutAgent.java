@@ -0,0 +1,322 @@
+package agents.workflow;
+
+import com.google.adk.agents.BaseAgent;
+import com.google.adk.agents.InvocationContext;
+import com.google.adk.agents.LlmAgent;
+import com.google.adk.events.Event;
+import com.google.adk.events.EventActions;
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs its sub-agents concurrently like a {@code ParallelAgent}, but with control over how many
+ * run at once, in which order they are started and on which threads.
+ *
+ * <p>A {@code ParallelAgent} starts every sub-agent immediately, so a fan-out to dozens of
+ * researchers sends dozens of model requests at the same moment. This agent keeps at most {@code
+ * maxConcurrency} sub-agents in flight and starts the next one as soon as one finishes, highest
+ * {@code priority} first (sub-agents with the same priority start in declaration order). Events
+ * are emitted as they are produced, as with {@code ParallelAgent}. Each sub-agent is subscribed on
+ * {@code scheduler}, {@code Schedulers.io()} by default, because a model call blocks the thread
+ * it runs on and sub-agents sharing a thread would run one after another.
+ *
+ * <p>By default the agent finishes when every sub-agent has finished. With {@code
+ * completeAfter(n)} or {@code quorum()} it finishes as soon as that many sub-agents have
+ * finished, and with {@code branchTimeout} each sub-agent is stopped once it has run for that
+ * long. Sub-agents that are still running at that point are cancelled, which also cancels their
+ * in-flight model calls. For every cancelled {@link LlmAgent} whose {@code outputKey} is not in
+ * the session state yet, the agent emits a state delta setting the key to {@code
+ * missingResult}, so a following agent whose instruction references the key can still run on the
+ * results that did arrive.
+ *
+ * <pre>{@code
+ * ParallelFanOutAgent research =
+ *     ParallelFanOutAgent.builder()
+ *         .name("ParallelWebResearchAgent")
+ *         .subAgents(researchers)
+ *         .maxConcurrency(4)
+ *         .priority("RenewableEnergyResearcher", 10)
+ *         .scheduler(ParallelFanOutAgent.virtualThreadScheduler())
+ *         .build();
+ * }</pre>
+ */
+public class ParallelFanOutAgent extends BaseAgent {
+
+  private static final Logger logger = Logger.getLogger(ParallelFanOutAgent.class.getName());
+
+  private final int maxConcurrency;
+  private final Map<String, Integer> priorities;
+  private final Scheduler scheduler;
+  private final int requiredCompletions;
+  private final Duration branchTimeout;
+  private final String missingResult;
+
+  private ParallelFanOutAgent(Builder builder) {
+    super(builder.name, builder.description, builder.subAgents, null, null);
+    this.maxConcurrency = builder.maxConcurrency;
+    this.priorities = Map.copyOf(builder.priorities);
+    this.scheduler = builder.scheduler;
+    int subAgentCount = builder.subAgents.size();
+    this.requiredCompletions =
+        builder.quorum
+            ? subAgentCount / 2 + 1
+            : Math.min(builder.requiredCompletions, subAgentCount);
+    this.branchTimeout = builder.branchTimeout;
+    this.missingResult = builder.missingResult;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * A scheduler that runs every sub-agent on its own virtual thread, so blocking tools do not pin
+   * platform threads. Virtual threads need Java 21; on older runtimes this falls back to {@link
+   * Schedulers#io()}.
+   */
+  public static Scheduler virtualThreadScheduler() {
+    try {
+      ExecutorService executor =
+          (ExecutorService)
+              Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+      return Schedulers.from(executor);
+    } catch (ReflectiveOperationException e) {
+      logger.log(Level.INFO, "Virtual threads are not available, using the io scheduler.");
+      return Schedulers.io();
+    }
+  }
+
+  public int maxConcurrency() {
+    return maxConcurrency;
+  }
+
+  public int priority(BaseAgent subAgent) {
+    return priorities.getOrDefault(subAgent.name(), 0);
+  }
+
+  /** Number of sub-agents that must finish before the remaining ones are cancelled. */
+  public int requiredCompletions() {
+    return requiredCompletions;
+  }
+
+  @Override
+  protected Flowable<Event> runAsyncImpl(InvocationContext invocationContext) {
+    // Same branch as ParallelAgent, so the sub-agents do not see each other's conversation.
+    invocationContext.branch(
+        invocationContext.branch().map(branch -> branch + "." + name()).orElse(name()));
+    List<BaseAgent> ordered = new ArrayList<>(subAgents());
+    // List.sort is stable, so equal priorities keep their declaration order.
+    ordered.sort(Comparator.comparingInt(this::priority).reversed());
+    return Flowable.defer(
+        () -> {
+          Set<String> finished = ConcurrentHashMap.newKeySet();
+          AtomicInteger completions = new AtomicInteger();
+          Flowable<Event> events =
+              Flowable.fromIterable(ordered)
+                  .flatMap(subAgent -> start(subAgent, invocationContext), maxConcurrency)
+                  // Cancels the branches still running once enough of them have finished.
+                  .takeUntil(
+                      signal ->
+                          signal.finished != null
+                              && finished.add(signal.finished.name())
+                              && completions.incrementAndGet() >= requiredCompletions)
+                  .filter(signal -> signal.event != null)
+                  .map(signal -> signal.event);
+          return events.concatWith(
+              Flowable.defer(() -> fillMissingResults(ordered, finished, invocationContext)));
+        });
+  }
+
+  // Emits the sub-agent's events followed by a completion signal. A sub-agent that runs into its
+  // deadline is cancelled and does not signal completion. The sub-agent itself is subscribed on
+  // the scheduler, so the deadline timer can complete the branch while the sub-agent's thread is
+  // blocked in a model call.
+  private Flowable<Signal> start(BaseAgent subAgent, InvocationContext invocationContext) {
+    return Flowable.defer(
+        () -> {
+          AtomicBoolean completed = new AtomicBoolean();
+          Flowable<Signal> events =
+              subAgent
+                  .runAsync(invocationContext)
+                  .subscribeOn(scheduler)
+                  .map(Signal::event)
+                  .doOnComplete(() -> completed.set(true));
+          if (branchTimeout != null) {
+            events =
+                events.takeUntil(
+                    Flowable.timer(branchTimeout.toMillis(), TimeUnit.MILLISECONDS));
+          }
+          return events.concatWith(
+              Flowable.defer(
+                  () -> {
+                    if (completed.get()) {
+                      return Flowable.just(Signal.finished(subAgent));
+                    }
+                    logger.log(
+                        Level.INFO,
+                        () ->
+                            String.format(
+                                "[%s] %s timed out after %s.",
+                                name(), subAgent.name(), branchTimeout));
+                    return Flowable.empty();
+                  }));
+        });
+  }
+
+  private Flowable<Event> fillMissingResults(
+      List<BaseAgent> subAgents, Set<String> finished, InvocationContext invocationContext) {
+    ConcurrentHashMap<String, Object> stateDelta = new ConcurrentHashMap<>();
+    for (BaseAgent subAgent : subAgents) {
+      if (finished.contains(subAgent.name()) || !(subAgent instanceof LlmAgent)) {
+        continue;
+      }
+      logger.log(
+          Level.INFO, () -> String.format("[%s] %s did not finish.", name(), subAgent.name()));
+      ((LlmAgent) subAgent)
+          .outputKey()
+          .filter(key -> !invocationContext.session().state().containsKey(key))
+          .ifPresent(key -> stateDelta.put(key, missingResult));
+    }
+    if (stateDelta.isEmpty()) {
+      return Flowable.empty();
+    }
+    return Flowable.just(
+        Event.builder()
+            .id(Event.generateEventId())
+            .invocationId(invocationContext.invocationId())
+            .author(name())
+            .branch(invocationContext.branch())
+            .actions(EventActions.builder().stateDelta(stateDelta).build())
+            .build());
+  }
+
+  // Either an event from a sub-agent or the notice that a sub-agent has finished.
+  private static final class Signal {
+    final Event event;
+    final BaseAgent finished;
+
+    private Signal(Event event, BaseAgent finished) {
+      this.event = event;
+      this.finished = finished;
+    }
+
+    static Signal event(Event event) {
+      return new Signal(event, null);
+    }
+
+    static Signal finished(BaseAgent subAgent) {
+      return new Signal(null, subAgent);
+    }
+  }
+
+  @Override
+  protected Flowable<Event> runLiveImpl(InvocationContext invocationContext) {
+    return Flowable.error(new UnsupportedOperationException("runLive not implemented."));
+  }
+
+  /** Builder for {@link ParallelFanOutAgent}. */
+  public static class Builder {
+    private String name;
+    private String description = "";
+    private List<? extends BaseAgent> subAgents = List.of();
+    private int maxConcurrency = Integer.MAX_VALUE;
+    private final Map<String, Integer> priorities = new HashMap<>();
+    private Scheduler scheduler = Schedulers.io();
+    private int requiredCompletions = Integer.MAX_VALUE;
+    private boolean quorum;
+    private Duration branchTimeout;
+    private String missingResult = "No result available.";
+
+    public Builder name(String name) {
+      this.name = name;
+      return this;
+    }
+
+    public Builder description(String description) {
+      this.description = description;
+      return this;
+    }
+
+    public Builder subAgents(List<? extends BaseAgent> subAgents) {
+      this.subAgents = subAgents;
+      return this;
+    }
+
+    public Builder subAgents(BaseAgent... subAgents) {
+      return subAgents(List.of(subAgents));
+    }
+
+    /** Maximum number of sub-agents running at the same time; unbounded by default. */
+    public Builder maxConcurrency(int maxConcurrency) {
+      if (maxConcurrency < 1) {
+        throw new IllegalArgumentException("maxConcurrency must be at least 1: " + maxConcurrency);
+      }
+      this.maxConcurrency = maxConcurrency;
+      return this;
+    }
+
+    /** Sub-agents with a higher priority are started first; the default priority is 0. */
+    public Builder priority(String subAgentName, int priority) {
+      priorities.put(subAgentName, priority);
+      return this;
+    }
+
+    /**
+     * Scheduler each sub-agent is subscribed on; {@code Schedulers.io()} by default. Unlike in
+     * {@code ParallelAgent}, sub-agents never run on the subscribing thread, which would make
+     * blocking model calls run one at a time.
+     */
+    public Builder scheduler(Scheduler scheduler) {
+      this.scheduler = scheduler;
+      return this;
+    }
+
+    /** Finishes once {@code count} sub-agents have finished, cancelling the others. */
+    public Builder completeAfter(int count) {
+      if (count < 1) {
+        throw new IllegalArgumentException("count must be at least 1: " + count);
+      }
+      this.requiredCompletions = count;
+      this.quorum = false;
+      return this;
+    }
+
+    /** Finishes once a majority of the sub-agents have finished, cancelling the others. */
+    public Builder quorum() {
+      this.quorum = true;
+      return this;
+    }
+
+    /** Cancels each sub-agent that is still running this long after it was started. */
+    public Builder branchTimeout(Duration branchTimeout) {
+      this.branchTimeout = branchTimeout;
+      return this;
+    }
+
+    /** State value written for the {@code outputKey} of sub-agents that did not finish. */
+    public Builder missingResult(String missingResult) {
+      this.missingResult = missingResult;
+      return this;
+    }
+
+    public ParallelFanOutAgent build() {
+      return new ParallelFanOutAgent(this);
+    }
+  }
+}
@@ -0,0 +1,267 @@
+package agents.workflow;
+
+import com.google.adk.agents.BaseAgent;
+import com.google.adk.agents.InvocationContext;
+import com.google.adk.agents.LlmAgent;
+import com.google.adk.events.Event;
+import com.google.genai.types.Content;
+import com.google.genai.types.Part;
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.flowables.ConnectableFlowable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs its sub-agents one after the other like a {@code SequentialAgent}, but can start a
+ * sub-agent while the one before it is still streaming its output.
+ *
+ * <p>For a step marked with {@link Builder#pipeline}, the agent watches the partial text events of
+ * that step (which requires a {@code RunConfig} with SSE streaming). Once the text streamed so far
+ * satisfies {@code readyWhen}, the next step is started on it: the text is put into the session
+ * state under the step's {@code outputKey}, so the next step's instruction sees it as usual. The
+ * next step is started only once, on a scheduler thread, and its events are held back; when the
+ * step finishes, the speculative run is kept if its input equals the final output apart from
+ * leading and trailing whitespace, and otherwise it is cancelled and the next step is run again on
+ * the final output. The next step finishes earlier whenever {@code readyWhen} recognizes the end
+ * of the output before the step itself has finished, e.g. a response that ends with a closing
+ * code fence. A {@code readyWhen} that holds for incomplete output costs one wasted run of the
+ * next step.
+ *
+ * <p>A kept run is not always the same as with a {@code SequentialAgent}: it starts before the
+ * final event of the step is in the session, so the conversation history the next step is run
+ * with lacks the step's reply. Pipeline only steps whose successor reads the output through the
+ * {@code {outputKey}} placeholder in its instruction rather than from the history.
+ *
+ * <p>While a speculative run is in progress the session state holds the partial output; the
+ * final value is written by the step's own state delta as usual.
+ *
+ * <pre>{@code
+ * PipelinedSequentialAgent codePipeline =
+ *     PipelinedSequentialAgent.builder()
+ *         .name("CodePipelineAgent")
+ *         .subAgents(codeWriterAgent, codeReviewerAgent, codeRefactorerAgent)
+ *         .pipeline("CodeWriterAgent", PipelinedSequentialAgent.closedCodeBlock())
+ *         .build();
+ * }</pre>
+ */
+public class PipelinedSequentialAgent extends BaseAgent {
+
+  private static final Logger logger = Logger.getLogger(PipelinedSequentialAgent.class.getName());
+
+  private final Map<String, Predicate<String>> pipelined;
+
+  private PipelinedSequentialAgent(Builder builder) {
+    super(builder.name, builder.description, builder.subAgents, null, null);
+    this.pipelined = Map.copyOf(builder.pipelined);
+    for (String upstream : pipelined.keySet()) {
+      int index = indexOf(upstream);
+      if (index < 0 || index == builder.subAgents.size() - 1) {
+        throw new IllegalArgumentException(
+            upstream + " is not a sub-agent followed by another sub-agent.");
+      }
+      BaseAgent agent = subAgents().get(index);
+      if (!(agent instanceof LlmAgent) || ((LlmAgent) agent).outputKey().isEmpty()) {
+        throw new IllegalArgumentException(upstream + " must be an LlmAgent with an outputKey.");
+      }
+    }
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /** Ready once the text contains a complete fenced code block. */
+  public static Predicate<String> closedCodeBlock() {
+    return text -> {
+      int open = text.indexOf("```");
+      return open >= 0 && text.indexOf("```", open + 3) >= 0;
+    };
+  }
+
+  private int indexOf(String subAgentName) {
+    List<? extends BaseAgent> subAgents = subAgents();
+    for (int i = 0; i < subAgents.size(); i++) {
+      if (subAgents.get(i).name().equals(subAgentName)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  protected Flowable<Event> runAsyncImpl(InvocationContext invocationContext) {
+    return runFrom(0, invocationContext);
+  }
+
+  private Flowable<Event> runFrom(int index, InvocationContext invocationContext) {
+    List<? extends BaseAgent> subAgents = subAgents();
+    if (index >= subAgents.size()) {
+      return Flowable.empty();
+    }
+    BaseAgent step = subAgents.get(index);
+    Predicate<String> readyWhen = pipelined.get(step.name());
+    if (readyWhen == null) {
+      return Flowable.defer(() -> step.runAsync(invocationContext))
+          .concatWith(Flowable.defer(() -> runFrom(index + 1, invocationContext)));
+    }
+    return Flowable.defer(
+            () ->
+                new Speculation(
+                        (LlmAgent) step, subAgents.get(index + 1), readyWhen, invocationContext)
+                    .run())
+        .concatWith(Flowable.defer(() -> runFrom(index + 2, invocationContext)));
+  }
+
+  /** One pipelined pair of steps: the streaming step and the step speculatively run after it. */
+  private final class Speculation {
+    private final LlmAgent upstream;
+    private final BaseAgent downstream;
+    private final Predicate<String> readyWhen;
+    private final InvocationContext invocationContext;
+    private final String outputKey;
+    private final StringBuilder streamed = new StringBuilder();
+    private String finalOutput;
+    private String input;
+    private ConnectableFlowable<Event> run;
+    private Disposable connection;
+
+    Speculation(
+        LlmAgent upstream,
+        BaseAgent downstream,
+        Predicate<String> readyWhen,
+        InvocationContext invocationContext) {
+      this.upstream = upstream;
+      this.downstream = downstream;
+      this.readyWhen = readyWhen;
+      this.invocationContext = invocationContext;
+      this.outputKey = upstream.outputKey().get();
+    }
+
+    Flowable<Event> run() {
+      return upstream
+          .runAsync(invocationContext)
+          .doOnNext(this::observe)
+          .concatWith(Flowable.defer(this::finish))
+          // A kept run is part of this flowable, so it has ended by the time this runs; a
+          // speculative run left over after an error or cancellation must not keep calling the
+          // model.
+          .doFinally(this::cancel);
+    }
+
+    private synchronized void observe(Event event) {
+      Object delta = event.actions().stateDelta().get(outputKey);
+      if (delta != null) {
+        finalOutput = String.valueOf(delta);
+      }
+      if (!event.partial().orElse(false) || !event.author().equals(upstream.name())) {
+        return;
+      }
+      event.content().flatMap(Content::parts).orElse(List.of()).stream()
+          .map(Part::text)
+          .flatMap(Optional::stream)
+          .forEach(streamed::append);
+      // Only the first ready prefix is used; restarting on every later token would start the
+      // next step once per token.
+      if (input == null) {
+        String text = streamed.toString();
+        if (readyWhen.test(text)) {
+          start(text);
+        }
+      }
+    }
+
+    private void start(String text) {
+      input = text;
+      invocationContext.session().state().put(outputKey, text);
+      // subscribeOn keeps the run off the thread delivering the upstream step's tokens.
+      run =
+          Flowable.defer(() -> downstream.runAsync(invocationContext))
+              .subscribeOn(Schedulers.io())
+              .replay();
+      connection = run.connect();
+    }
+
+    private synchronized Flowable<Event> finish() {
+      String output = finalOutput != null ? finalOutput : streamed.toString();
+      if (run != null && input.strip().equals(output.strip())) {
+        logger.log(
+            Level.INFO,
+            () ->
+                String.format(
+                    "[%s] Keeping the run of %s started on the streamed output of %s.",
+                    name(), downstream.name(), upstream.name()));
+        return run;
+      }
+      if (run != null) {
+        logger.log(
+            Level.FINE,
+            () ->
+                String.format(
+                    "[%s] Output of %s changed after it was ready, running %s again.",
+                    name(), upstream.name(), downstream.name()));
+        cancel();
+      }
+      return downstream.runAsync(invocationContext);
+    }
+
+    private synchronized void cancel() {
+      if (connection != null) {
+        connection.dispose();
+      }
+      connection = null;
+      run = null;
+    }
+  }
+
+  @Override
+  protected Flowable<Event> runLiveImpl(InvocationContext invocationContext) {
+    return Flowable.error(new UnsupportedOperationException("runLive not implemented."));
+  }
+
+  /** Builder for {@link PipelinedSequentialAgent}. */
+  public static class Builder {
+    private String name;
+    private String description = "";
+    private List<? extends BaseAgent> subAgents = List.of();
+    private final Map<String, Predicate<String>> pipelined = new HashMap<>();
+
+    public Builder name(String name) {
+      this.name = name;
+      return this;
+    }
+
+    public Builder description(String description) {
+      this.description = description;
+      return this;
+    }
+
+    public Builder subAgents(List<? extends BaseAgent> subAgents) {
+      this.subAgents = subAgents;
+      return this;
+    }
+
+    public Builder subAgents(BaseAgent... subAgents) {
+      return subAgents(List.of(subAgents));
+    }
+
+    /**
+     * Starts the sub-agent after {@code upstreamName} as soon as the streamed output of {@code
+     * upstreamName} satisfies {@code readyWhen}, and runs it again if the final output differs.
+     */
+    public Builder pipeline(String upstreamName, Predicate<String> readyWhen) {
+      pipelined.put(upstreamName, readyWhen);
+      return this;
+    }
+
+    public PipelinedSequentialAgent build() {
+      return new PipelinedSequentialAgent(this);
+    }
+  }
+}
@@ -0,0 +1,43 @@
+package agents.workflow;
+
+import com.google.adk.agents.BaseAgent;
+import com.google.adk.artifacts.BaseArtifactService;
+import com.google.adk.events.Event;
+import com.google.adk.runner.Runner;
+import com.google.adk.sessions.BaseSessionService;
+import com.google.genai.types.Content;
+import io.reactivex.rxjava3.core.Flowable;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Runner that can continue a workflow built from {@link CheckpointedWorkflowAgent}s after a crash
+ * or a failed run.
+ */
+public class ResumableRunner extends Runner {
+
+  public ResumableRunner(
+      BaseAgent agent,
+      String appName,
+      BaseArtifactService artifactService,
+      BaseSessionService sessionService) {
+    super(agent, appName, artifactService, sessionService);
+  }
+
+  /**
+   * Runs the agent again in the given session, creating the session with {@code initialState}
+   * first if it no longer exists (e.g. an in-memory session lost in a restart). Checkpointed
+   * workflows restore the state of their completed sub-agents and continue after the last one.
+   */
+  public Flowable<Event> resume(
+      String userId, String sessionId, Map<String, Object> initialState, Content newMessage) {
+    return sessionService()
+        .getSession(appName(), userId, sessionId, Optional.empty())
+        .switchIfEmpty(
+            sessionService()
+                .createSession(
+                    appName(), userId, new ConcurrentHashMap<>(initialState), sessionId))
+        .flatMapPublisher(session -> runAsync(userId, session.id(), newMessage));
+  }
+}
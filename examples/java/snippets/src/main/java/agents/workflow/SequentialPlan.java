@@ -0,0 +1,108 @@
+package agents.workflow;
+
+import com.google.adk.agents.BaseAgent;
+import com.google.adk.agents.SequentialAgent;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Splits the steps of a sequential workflow into stages of consecutive steps that do not depend
+ * on each other and could therefore run concurrently.
+ *
+ * <p>A step joins the current stage unless it reads a state key written in that stage or writes a
+ * key read or written in that stage. Reads and writes come from {@link StateDependencies}, plus
+ * any extra reads declared per step for dependencies the instruction does not spell out as a
+ * {@code {key}} placeholder.
+ *
+ * <p>{@link #warnIfParallelizable(SequentialAgent)} logs the stages of an existing {@code
+ * SequentialAgent}; {@link ConcurrentSequentialAgent} executes them.
+ */
+public final class SequentialPlan {
+
+  private static final Logger logger = Logger.getLogger(SequentialPlan.class.getName());
+
+  private final List<List<BaseAgent>> stages;
+
+  private SequentialPlan(List<List<BaseAgent>> stages) {
+    this.stages = stages;
+  }
+
+  public static SequentialPlan of(List<? extends BaseAgent> steps) {
+    return of(steps, Map.of());
+  }
+
+  /**
+   * Plans {@code steps}, treating {@code extraReads.get(name)} as additional keys read by the step
+   * with that name.
+   */
+  public static SequentialPlan of(
+      List<? extends BaseAgent> steps, Map<String, Set<String>> extraReads) {
+    List<List<BaseAgent>> stages = new ArrayList<>();
+    List<BaseAgent> stage = new ArrayList<>();
+    Set<String> stageReads = new HashSet<>();
+    Set<String> stageWrites = new HashSet<>();
+    for (BaseAgent step : steps) {
+      Set<String> reads = new HashSet<>(StateDependencies.reads(step));
+      reads.addAll(extraReads.getOrDefault(step.name(), Set.of()));
+      Set<String> writes = StateDependencies.writes(step);
+      boolean conflicts =
+          reads.stream().anyMatch(stageWrites::contains)
+              || writes.stream().anyMatch(stageWrites::contains)
+              || writes.stream().anyMatch(stageReads::contains);
+      if (conflicts && !stage.isEmpty()) {
+        stages.add(List.copyOf(stage));
+        stage.clear();
+        stageReads.clear();
+        stageWrites.clear();
+      }
+      stage.add(step);
+      stageReads.addAll(reads);
+      stageWrites.addAll(writes);
+    }
+    if (!stage.isEmpty()) {
+      stages.add(List.copyOf(stage));
+    }
+    return new SequentialPlan(List.copyOf(stages));
+  }
+
+  /**
+   * Logs a warning if some steps of {@code agent} could run concurrently and returns the plan.
+   */
+  public static SequentialPlan warnIfParallelizable(SequentialAgent agent) {
+    SequentialPlan plan = of(agent.subAgents());
+    if (plan.isParallelizable()) {
+      logger.log(
+          Level.WARNING,
+          () ->
+              String.format(
+                  "[%s] Steps without state dependencies on each other run sequentially: %s",
+                  agent.name(), plan));
+    }
+    return plan;
+  }
+
+  public List<List<BaseAgent>> stages() {
+    return stages;
+  }
+
+  /** Whether at least one stage has more than one step. */
+  public boolean isParallelizable() {
+    return stages.stream().anyMatch(stage -> stage.size() > 1);
+  }
+
+  /** The stages in order, e.g. {@code [A] -> [B, C] -> [D]}. */
+  @Override
+  public String toString() {
+    return stages.stream()
+        .map(
+            stage ->
+                stage.stream().map(BaseAgent::name).collect(Collectors.joining(", ", "[", "]")))
+        .collect(Collectors.joining(" -> "));
+  }
+}
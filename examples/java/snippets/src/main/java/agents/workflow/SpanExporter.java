@@ -0,0 +1,11 @@
+package agents.workflow;
+
+/** Receives the spans recorded by an {@link AgentTracer} as they end. */
+public interface SpanExporter {
+
+  /**
+   * Called once per finished span, on the thread that ended it. Spans end before the span that
+   * encloses them, so a span without a parent is the last one of its trace.
+   */
+  void export(AgentSpan span);
+}
@@ -0,0 +1,74 @@
+package agents.workflow;
+
+import com.google.adk.agents.BaseAgent;
+import com.google.adk.agents.LlmAgent;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Works out which session state keys an agent reads and writes.
+ *
+ * <p>An {@link LlmAgent} reads the keys referenced in its instruction as {@code {key}}, {@code
+ * {key?}} or {@code {{key}}} (including {@code app:}, {@code user:} and {@code temp:} keys, but
+ * not {@code {artifact.name}} references) and writes its {@code outputKey}. Any other agent reads
+ * and writes whatever its sub-agents read and write. Instructions that only describe a key in
+ * prose ("the story in session state with key 'current_story'") are not detected; declare those
+ * dependencies explicitly where this class is used.
+ */
+public final class StateDependencies {
+
+  private static final Pattern STATE_REFERENCE =
+      Pattern.compile("\\{+\\s*((?:app:|user:|temp:)?[A-Za-z_][A-Za-z0-9_]*)\\??\\s*}+");
+
+  private StateDependencies() {}
+
+  /** State keys referenced in an instruction template, in order of first appearance. */
+  public static Set<String> references(String instruction) {
+    Set<String> keys = new LinkedHashSet<>();
+    Matcher matcher = STATE_REFERENCE.matcher(instruction);
+    while (matcher.find()) {
+      keys.add(matcher.group(1));
+    }
+    return keys;
+  }
+
+  /**
+   * Substitutes the state references in an instruction template with their values, as the model
+   * will see the instruction. Missing keys are left as they are.
+   */
+  public static String render(String instruction, Map<String, Object> state) {
+    Matcher matcher = STATE_REFERENCE.matcher(instruction);
+    StringBuilder rendered = new StringBuilder();
+    while (matcher.find()) {
+      Object value = state.get(matcher.group(1));
+      String replacement = value == null ? matcher.group() : String.valueOf(value);
+      matcher.appendReplacement(rendered, Matcher.quoteReplacement(replacement));
+    }
+    return matcher.appendTail(rendered).toString();
+  }
+
+  public static Set<String> reads(BaseAgent agent) {
+    Set<String> keys = new LinkedHashSet<>();
+    if (agent instanceof LlmAgent) {
+      ((LlmAgent) agent).instruction().map(StateDependencies::references).ifPresent(keys::addAll);
+    }
+    for (BaseAgent subAgent : agent.subAgents()) {
+      keys.addAll(reads(subAgent));
+    }
+    return keys;
+  }
+
+  public static Set<String> writes(BaseAgent agent) {
+    Set<String> keys = new LinkedHashSet<>();
+    if (agent instanceof LlmAgent) {
+      ((LlmAgent) agent).outputKey().ifPresent(keys::add);
+    }
+    for (BaseAgent subAgent : agent.subAgents()) {
+      keys.addAll(writes(subAgent));
+    }
+    return keys;
+  }
+}
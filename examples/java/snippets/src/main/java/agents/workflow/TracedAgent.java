@@ -0,0 +1,39 @@
+package agents.workflow;
+
+import com.google.adk.agents.BaseAgent;
+import com.google.adk.agents.InvocationContext;
+import com.google.adk.events.Event;
+import io.reactivex.rxjava3.core.Flowable;
+import java.util.List;
+
+/**
+ * Runs a sub-agent and records each run as a span of an {@link AgentTracer}. Created by {@link
+ * AgentTracer#trace}; it can be used anywhere the wrapped agent could, e.g. as one of the
+ * sub-agents of a {@code SequentialAgent}.
+ */
+public class TracedAgent extends BaseAgent {
+
+  private final BaseAgent delegate;
+  private final AgentTracer tracer;
+
+  TracedAgent(BaseAgent delegate, AgentTracer tracer) {
+    super(delegate.name() + "Traced", delegate.description(), List.of(delegate), null, null);
+    this.delegate = delegate;
+    this.tracer = tracer;
+  }
+
+  @Override
+  protected Flowable<Event> runAsyncImpl(InvocationContext invocationContext) {
+    return tracer.span(
+        delegate.name(),
+        "agent",
+        this,
+        invocationContext,
+        () -> delegate.runAsync(invocationContext));
+  }
+
+  @Override
+  protected Flowable<Event> runLiveImpl(InvocationContext invocationContext) {
+    return Flowable.error(new UnsupportedOperationException("runLive not implemented."));
+  }
+}
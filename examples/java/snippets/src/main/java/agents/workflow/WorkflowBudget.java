@@ -0,0 +1,117 @@
+package agents.workflow;
+
+import com.google.adk.agents.InvocationContext;
+import com.google.adk.events.Event;
+import com.google.genai.types.Content;
+import java.time.Duration;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wall-clock, token and model call limits for one invocation of a workflow.
+ *
+ * <p>{@link BudgetedWorkflowAgent} attaches a budget to the invocation it runs, and every agent
+ * nested in it can look the budget up with {@link #of(InvocationContext)}: all copies of an
+ * invocation context share the invocation id the budget is registered under. A nested {@link
+ * BudgetedWorkflowAgent} stacks its budget on top of the outer one, which is in effect again once
+ * the nested workflow has finished. Tokens are estimated from the text of the events ({@link
+ * LoopCondition#estimatedTokens}), and every complete model response counts as one model call.
+ */
+public final class WorkflowBudget {
+
+  // The budgets of nested BudgetedWorkflowAgents per invocation, innermost last.
+  private static final Map<String, Deque<WorkflowBudget>> BY_INVOCATION =
+      new ConcurrentHashMap<>();
+
+  private final Duration maxWallClock;
+  private final long maxTokens;
+  private final long maxModelCalls;
+  private final long startNanos = System.nanoTime();
+  private final AtomicLong tokens = new AtomicLong();
+  private final AtomicLong modelCalls = new AtomicLong();
+
+  public WorkflowBudget(Duration maxWallClock, long maxTokens, long maxModelCalls) {
+    this.maxWallClock = maxWallClock;
+    this.maxTokens = maxTokens;
+    this.maxModelCalls = maxModelCalls;
+  }
+
+  /**
+   * The budget of the innermost {@link BudgetedWorkflowAgent} the invocation runs in, if any.
+   */
+  public static Optional<WorkflowBudget> of(InvocationContext invocationContext) {
+    Deque<WorkflowBudget> budgets = BY_INVOCATION.get(invocationContext.invocationId());
+    return budgets == null ? Optional.empty() : Optional.ofNullable(budgets.peekLast());
+  }
+
+  static void attach(InvocationContext invocationContext, WorkflowBudget budget) {
+    BY_INVOCATION.compute(
+        invocationContext.invocationId(),
+        (key, budgets) -> {
+          Deque<WorkflowBudget> stack = budgets != null ? budgets : new ConcurrentLinkedDeque<>();
+          stack.addLast(budget);
+          return stack;
+        });
+  }
+
+  // Removes this budget only, so an outer budget and those of concurrent siblings stay.
+  static void detach(InvocationContext invocationContext, WorkflowBudget budget) {
+    BY_INVOCATION.computeIfPresent(
+        invocationContext.invocationId(),
+        (key, budgets) -> {
+          budgets.removeLastOccurrence(budget);
+          return budgets.isEmpty() ? null : budgets;
+        });
+  }
+
+  /** Charges the budget for an event emitted by the workflow. */
+  void consume(Event event) {
+    tokens.addAndGet(LoopCondition.estimatedTokens(event));
+    boolean modelResponse =
+        !event.partial().orElse(false)
+            && event.content().flatMap(Content::role).map("model"::equals).orElse(false);
+    if (modelResponse) {
+      modelCalls.incrementAndGet();
+    }
+  }
+
+  public Duration maxWallClock() {
+    return maxWallClock;
+  }
+
+  public Duration remainingWallClock() {
+    Duration remaining = maxWallClock.minusNanos(System.nanoTime() - startNanos);
+    return remaining.isNegative() ? Duration.ZERO : remaining;
+  }
+
+  /**
+   * Share of the budget still available, between 0 and 1: the smallest of the remaining shares
+   * of wall-clock time, tokens and model calls.
+   */
+  public double remainingFraction() {
+    double time = (double) remainingWallClock().toNanos() / maxWallClock.toNanos();
+    double tokenShare = 1 - (double) tokens.get() / maxTokens;
+    double callShare = 1 - (double) modelCalls.get() / maxModelCalls;
+    return Math.max(0, Math.min(time, Math.min(tokenShare, callShare)));
+  }
+
+  public boolean isExhausted() {
+    return remainingFraction() <= 0;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%d ms of %d ms, %d of %d tokens, %d of %d model calls",
+        maxWallClock.minus(remainingWallClock()).toMillis(),
+        maxWallClock.toMillis(),
+        tokens.get(),
+        maxTokens,
+        modelCalls.get(),
+        maxModelCalls);
+  }
+}
@@ -0,0 +1,179 @@
+package agents.workflow;
+
+import com.google.adk.agents.BaseAgent;
+import com.google.adk.agents.InvocationContext;
+import com.google.adk.events.Event;
+import com.google.adk.runner.InMemoryRunner;
+import com.google.adk.sessions.Session;
+import com.google.genai.types.Content;
+import com.google.genai.types.Part;
+import io.reactivex.rxjava3.core.Flowable;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the latency-oriented workflow agents against sub-agents that block their thread the way a
+ * model call does, and fails if an agent does not deliver the latency it promises. Needs no model
+ * or API key.
+ */
+public class WorkflowLatencyCheck {
+
+  public static void main(String[] args) {
+    checkHedgeBeatsSlowPrimary();
+    checkIndependentStepsOverlap();
+    checkWallClockLimitHolds();
+    checkFanOutRunsConcurrently();
+    checkBranchTimeoutCutsBranch();
+    checkFirstOfFinishesWithFastestBranch();
+    System.out.println("All latency checks passed.");
+  }
+
+  // The first run takes 1500 ms and the hedge started after ~100 ms takes 100 ms, so the hedge
+  // has to win well before the primary would have finished.
+  static void checkHedgeBeatsSlowPrimary() {
+    SleepingAgent delegate = new SleepingAgent("HedgeCheckDelegate", 1500, 100);
+    LatencyHistogram histogram = LatencyHistogram.forAgent(delegate.name());
+    for (int i = 0; i < 20; i++) {
+      histogram.record(100);
+    }
+    HedgedAgent hedged =
+        HedgedAgent.builder(delegate).hedgePercentile(50).maxExtraLoadPercent(100).build();
+    long millis = run(hedged);
+    check(millis < 1000, "Hedged run took %d ms, the slow primary was not beaten", millis);
+    check(
+        hedged.stats().get("hedgeWins") == 1,
+        "Expected the hedge to win, stats: %s",
+        hedged.stats());
+    System.out.printf("Hedge beat a 1500 ms primary in %d ms.%n", millis);
+  }
+
+  // Two independent 500 ms steps form one stage and must run side by side.
+  static void checkIndependentStepsOverlap() {
+    ConcurrentSequentialAgent agent =
+        ConcurrentSequentialAgent.builder()
+            .name("ConcurrentStepsCheck")
+            .subAgents(
+                new SleepingAgent("StepCheckFirst", 500), new SleepingAgent("StepCheckSecond", 500))
+            .build();
+    check(agent.plan().stages().size() == 1, "Expected one stage: %s", agent.plan().stages());
+    long millis = run(agent);
+    check(millis < 900, "Two independent 500 ms steps took %d ms", millis);
+    System.out.printf("Two independent 500 ms steps took %d ms.%n", millis);
+  }
+
+  // A 1500 ms workflow under a 200 ms limit has to be cut off at about 200 ms.
+  static void checkWallClockLimitHolds() {
+    BudgetedWorkflowAgent budgeted =
+        BudgetedWorkflowAgent.builder(new SleepingAgent("BudgetCheckWorkflow", 1500))
+            .maxWallClock(Duration.ofMillis(200))
+            .build();
+    long millis = run(budgeted);
+    check(millis < 600, "A 200 ms wall-clock limit let the workflow run for %d ms", millis);
+    System.out.printf("A 200 ms limit stopped a 1500 ms workflow after %d ms.%n", millis);
+  }
+
+  // Three 500 ms branches with room for all three must overlap with the default scheduler.
+  static void checkFanOutRunsConcurrently() {
+    ParallelFanOutAgent fanOut =
+        ParallelFanOutAgent.builder()
+            .name("FanOutCheck")
+            .subAgents(
+                new SleepingAgent("FanOutCheckA", 500),
+                new SleepingAgent("FanOutCheckB", 500),
+                new SleepingAgent("FanOutCheckC", 500))
+            .maxConcurrency(3)
+            .build();
+    long millis = run(fanOut);
+    check(millis < 900, "Three concurrent 500 ms branches took %d ms", millis);
+    System.out.printf("Three concurrent 500 ms branches took %d ms.%n", millis);
+  }
+
+  // A 200 ms branch timeout has to stop a 1500 ms branch while its model call is still blocking.
+  static void checkBranchTimeoutCutsBranch() {
+    ParallelFanOutAgent fanOut =
+        ParallelFanOutAgent.builder()
+            .name("BranchTimeoutCheck")
+            .subAgents(new SleepingAgent("BranchTimeoutCheckSlow", 1500))
+            .branchTimeout(Duration.ofMillis(200))
+            .build();
+    long millis = run(fanOut);
+    check(millis < 600, "A 200 ms branch timeout let the branch run for %d ms", millis);
+    System.out.printf("A 200 ms branch timeout stopped a 1500 ms branch after %d ms.%n", millis);
+  }
+
+  // First of a 2000 ms and a 300 ms branch has to finish with the 300 ms one.
+  static void checkFirstOfFinishesWithFastestBranch() {
+    ParallelFanOutAgent fanOut =
+        ParallelFanOutAgent.builder()
+            .name("FirstOfCheck")
+            .subAgents(
+                new SleepingAgent("FirstOfCheckSlow", 2000),
+                new SleepingAgent("FirstOfCheckFast", 300))
+            .completeAfter(1)
+            .build();
+    long millis = run(fanOut);
+    check(millis < 800, "First of [2000 ms, 300 ms] took %d ms", millis);
+    System.out.printf("First of [2000 ms, 300 ms] took %d ms.%n", millis);
+  }
+
+  // Runs the agent once in a fresh session and returns the wall-clock time in milliseconds.
+  static long run(BaseAgent agent) {
+    InMemoryRunner runner = new InMemoryRunner(agent);
+    Session session =
+        runner.sessionService().createSession(runner.appName(), "user", null, null).blockingGet();
+    long start = System.nanoTime();
+    runner
+        .runAsync("user", session.id(), Content.fromParts(Part.fromText("Go.")))
+        .toList()
+        .blockingGet();
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+  }
+
+  static void check(boolean condition, String format, Object... args) {
+    if (!condition) {
+      throw new IllegalStateException(String.format(format, args));
+    }
+  }
+
+  /**
+   * Stands in for an {@code LlmAgent}: blocks the subscribing thread for a while, then answers
+   * with one event. Runs take the given delays in order; the last delay repeats.
+   */
+  static final class SleepingAgent extends BaseAgent {
+    private final long[] delaysMillis;
+    private final AtomicInteger runs = new AtomicInteger();
+
+    SleepingAgent(String name, long... delaysMillis) {
+      super(name, "Sleeps, then answers.", List.of(), null, null);
+      this.delaysMillis = delaysMillis;
+    }
+
+    @Override
+    protected Flowable<Event> runAsyncImpl(InvocationContext invocationContext) {
+      return Flowable.fromCallable(
+          () -> {
+            int run = runs.getAndIncrement();
+            long delay = delaysMillis[Math.min(run, delaysMillis.length - 1)];
+            try {
+              Thread.sleep(delay);
+            } catch (InterruptedException e) {
+              // Cancelled; the event below is dropped.
+              Thread.currentThread().interrupt();
+            }
+            return Event.builder()
+                .id(Event.generateEventId())
+                .invocationId(invocationContext.invocationId())
+                .author(name())
+                .content(Content.fromParts(Part.fromText(name() + " answered after " + delay)))
+                .build();
+          });
+    }
+
+    @Override
+    protected Flowable<Event> runLiveImpl(InvocationContext invocationContext) {
+      return Flowable.error(new UnsupportedOperationException("runLive not implemented."));
+    }
+  }
+}
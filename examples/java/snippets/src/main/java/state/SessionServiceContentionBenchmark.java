@@ -0,0 +1,135 @@
+package state;
+
+import com.google.adk.events.Event;
+import com.google.adk.events.EventActions;
+import com.google.adk.sessions.BaseSessionService;
+import com.google.adk.sessions.InMemorySessionService;
+import com.google.adk.sessions.Session;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how session services hold up when many threads work on different sessions at once.
+ *
+ * <p>Every thread repeats the sequence of {@link ManualStateUpdateExample} on sessions of its own
+ * users: create a session, append an event with a state delta, read the session back. The
+ * throughput of {@code InMemorySessionService} and {@link ShardedSessionService} is printed for
+ * the same load.
+ *
+ * <pre>
+ * java state.SessionServiceContentionBenchmark [threads] [sessionsPerThread] [eventsPerSession]
+ * </pre>
+ */
+public class SessionServiceContentionBenchmark {
+
+  private static final String APP_NAME = "state_app_manual";
+
+  public static void main(String[] args) throws Exception {
+    int threads = args.length > 0 ? Integer.parseInt(args[0]) : 4 * cpus();
+    int sessionsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+    int eventsPerSession = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+    for (int round = 0; round < 2; round++) {
+      // The first round warms up the JIT.
+      String label = round == 0 ? " (warm-up)" : "";
+      run(
+          "InMemorySessionService" + label,
+          new InMemorySessionService(),
+          threads,
+          sessionsPerThread,
+          eventsPerSession);
+      run(
+          "ShardedSessionService" + label,
+          new ShardedSessionService(),
+          threads,
+          sessionsPerThread,
+          eventsPerSession);
+    }
+  }
+
+  private static void run(
+      String name,
+      BaseSessionService sessionService,
+      int threads,
+      int sessionsPerThread,
+      int eventsPerSession)
+      throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<?>> workers = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      String userId = "user" + t;
+      workers.add(
+          executor.submit(
+              () -> {
+                start.await();
+                for (int s = 0; s < sessionsPerThread; s++) {
+                  runSession(sessionService, userId, "session" + s, eventsPerSession);
+                }
+                return null;
+              }));
+    }
+    long startNanos = System.nanoTime();
+    start.countDown();
+    for (Future<?> worker : workers) {
+      worker.get();
+    }
+    long elapsedNanos = System.nanoTime() - startNanos;
+    executor.shutdown();
+    executor.awaitTermination(1, TimeUnit.MINUTES);
+
+    // One create, eventsPerSession appends and reads per session.
+    long operations = (long) threads * sessionsPerThread * (1 + 2L * eventsPerSession);
+    System.out.printf(
+        "%-36s %3d threads: %,12.0f ops/s, %,8.0f ns/op%n",
+        name,
+        threads,
+        operations * 1e9 / elapsedNanos,
+        (double) elapsedNanos * threads / operations);
+  }
+
+  private static void runSession(
+      BaseSessionService sessionService, String userId, String sessionId, int events) {
+    ConcurrentMap<String, Object> initialState = new ConcurrentHashMap<>();
+    initialState.put("user:login_count", 0);
+    initialState.put("task_status", "idle");
+    Session session =
+        sessionService.createSession(APP_NAME, userId, initialState, sessionId).blockingGet();
+
+    for (int i = 0; i < events; i++) {
+      long currentTimeMillis = Instant.now().toEpochMilli();
+      ConcurrentMap<String, Object> stateChanges = new ConcurrentHashMap<>();
+      stateChanges.put("task_status", "active");
+      Object loginCountObj = session.state().get("user:login_count");
+      int currentLoginCount =
+          loginCountObj instanceof Number ? ((Number) loginCountObj).intValue() : 0;
+      stateChanges.put("user:login_count", currentLoginCount + 1);
+      stateChanges.put("user:last_login_ts", currentTimeMillis);
+      stateChanges.put("temp:validation_needed", true);
+
+      Event systemEvent =
+          Event.builder()
+              .invocationId("inv_login_update")
+              .author("system")
+              .actions(EventActions.builder().stateDelta(stateChanges).build())
+              .timestamp(currentTimeMillis)
+              .build();
+      sessionService.appendEvent(session, systemEvent).blockingGet();
+      session =
+          sessionService.getSession(APP_NAME, userId, sessionId, Optional.empty()).blockingGet();
+    }
+  }
+
+  private static int cpus() {
+    return Runtime.getRuntime().availableProcessors();
+  }
+}
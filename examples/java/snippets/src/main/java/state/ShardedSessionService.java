@@ -0,0 +1,255 @@
+package state;
+
+import com.google.adk.events.Event;
+import com.google.adk.sessions.BaseSessionService;
+import com.google.adk.sessions.GetSessionConfig;
+import com.google.adk.sessions.ListEventsResponse;
+import com.google.adk.sessions.ListSessionsResponse;
+import com.google.adk.sessions.Session;
+import com.google.adk.sessions.State;
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.core.Single;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+/**
+ * An in-memory session service for many concurrent sessions, as a replacement for {@code
+ * InMemorySessionService} when it becomes a point of contention.
+ *
+ * <p>Sessions are spread over {@code shards} independent maps by the hash of their app and user.
+ * Lookups never lock; {@code appendEvent} and {@code getSession} lock only the session they work
+ * on, so requests for different sessions never wait for each other.
+ *
+ * <p>State is stored by tier: {@code app:} and {@code user:} keys in {@link StateTiers}, shared by
+ * all sessions of the app or user, and the other keys in a {@link StateMap} per session. The
+ * session returned by {@code getSession} gets a {@link TieredState} over the shared tiers, a
+ * structurally shared copy of the session's own state and an empty {@code temp:} tier, so reading
+ * a session neither merges nor copies state, and {@code temp:} keys live only as long as the
+ * invocation that uses the returned session.
+ *
+ * <pre>{@code
+ * BaseSessionService sessionService = new ShardedSessionService(256);
+ * Runner runner = new Runner(agent, APP_NAME, null, sessionService);
+ * }</pre>
+ */
+public final class ShardedSessionService implements BaseSessionService {
+
+  private final Shard[] shards;
+  private final int shardMask;
+  private final StateTiers tiers = new StateTiers();
+
+  /** Sessions of the users that hash to one shard. */
+  private static final class Shard {
+    // Keyed by app and user, then by session id.
+    final Map<String, Map<String, Stored>> sessions = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * A session as the service keeps it. The state is held here rather than in a {@link Session},
+   * whose builder wraps the map it is given.
+   */
+  private static final class Stored {
+    final String appName;
+    final String userId;
+    final String sessionId;
+    final TieredState state;
+    final List<Event> events = new ArrayList<>();
+    Instant lastUpdateTime;
+
+    Stored(String appName, String userId, String sessionId, TieredState state) {
+      this.appName = appName;
+      this.userId = userId;
+      this.sessionId = sessionId;
+      this.state = state;
+      this.lastUpdateTime = Instant.now();
+    }
+  }
+
+  public ShardedSessionService() {
+    this(4 * Runtime.getRuntime().availableProcessors());
+  }
+
+  /** @param shards number of shards, rounded up to a power of two */
+  public ShardedSessionService(int shards) {
+    int count = shards <= 1 ? 1 : Integer.highestOneBit(shards - 1) << 1;
+    this.shards = new Shard[count];
+    for (int i = 0; i < count; i++) {
+      this.shards[i] = new Shard();
+    }
+    this.shardMask = count - 1;
+  }
+
+  @Override
+  public Single<Session> createSession(
+      String appName, String userId, ConcurrentMap<String, Object> state, String sessionId) {
+    return Single.fromCallable(
+        () -> {
+          String id = sessionId != null ? sessionId : UUID.randomUUID().toString();
+          TieredState tieredState = tiers.view(appName, userId, new StateMap());
+          if (state != null) {
+            state.forEach(
+                (key, value) -> {
+                  if (!key.startsWith(State.TEMP_PREFIX)) {
+                    tieredState.put(key, value);
+                  }
+                });
+          }
+          Stored stored = new Stored(appName, userId, id, tieredState);
+          String userKey = userKey(appName, userId);
+          boolean[] created = new boolean[1];
+          // compute() makes this atomic with the removal of an empty per-user map on delete.
+          shard(userKey)
+              .sessions
+              .compute(
+                  userKey,
+                  (key, userSessions) -> {
+                    Map<String, Stored> map =
+                        userSessions != null ? userSessions : new ConcurrentHashMap<>();
+                    created[0] = map.putIfAbsent(id, stored) == null;
+                    return map;
+                  });
+          if (!created[0]) {
+            throw new IllegalStateException("Session already exists: " + id);
+          }
+          synchronized (stored) {
+            return view(stored, Optional.empty());
+          }
+        });
+  }
+
+  @Override
+  public Maybe<Session> getSession(
+      String appName, String userId, String sessionId, Optional<GetSessionConfig> config) {
+    return Maybe.fromCallable(
+        () -> {
+          String userKey = userKey(appName, userId);
+          Stored stored = sessionsOf(shard(userKey), userKey).get(sessionId);
+          if (stored == null) {
+            return null;
+          }
+          synchronized (stored) {
+            return view(stored, config);
+          }
+        });
+  }
+
+  @Override
+  public Single<ListSessionsResponse> listSessions(String appName, String userId) {
+    return Single.fromCallable(
+        () -> {
+          String userKey = userKey(appName, userId);
+          List<Session> list = new ArrayList<>();
+          for (Stored stored : sessionsOf(shard(userKey), userKey).values()) {
+            synchronized (stored) {
+              list.add(
+                  Session.builder(stored.sessionId)
+                      .appName(appName)
+                      .userId(userId)
+                      .lastUpdateTime(stored.lastUpdateTime)
+                      .build());
+            }
+          }
+          return ListSessionsResponse.builder().sessions(list).build();
+        });
+  }
+
+  @Override
+  public Completable deleteSession(String appName, String userId, String sessionId) {
+    return Completable.fromAction(
+        () -> {
+          String userKey = userKey(appName, userId);
+          shard(userKey)
+              .sessions
+              .computeIfPresent(
+                  userKey,
+                  (key, userSessions) -> {
+                    userSessions.remove(sessionId);
+                    return userSessions.isEmpty() ? null : userSessions;
+                  });
+        });
+  }
+
+  @Override
+  public Single<ListEventsResponse> listEvents(String appName, String userId, String sessionId) {
+    return getSession(appName, userId, sessionId, Optional.empty())
+        .map(session -> ListEventsResponse.builder().events(session.events()).build())
+        .defaultIfEmpty(ListEventsResponse.builder().events(List.of()).build());
+  }
+
+  @Override
+  public Single<Event> appendEvent(Session session, Event event) {
+    BaseSessionService.super.appendEvent(session, event);
+    if (event.partial().orElse(false)) {
+      return Single.just(event);
+    }
+    String userKey = userKey(session.appName(), session.userId());
+    Stored stored = sessionsOf(shard(userKey), userKey).get(session.id());
+    if (stored == null) {
+      return Single.error(new IllegalArgumentException("Session not found: " + session.id()));
+    }
+    Instant now = Instant.now();
+    Map<String, Object> stateDelta = event.actions().stateDelta();
+    synchronized (stored) {
+      if (stateDelta != null) {
+        stateDelta.forEach(
+            (key, value) -> {
+              if (!key.startsWith(State.TEMP_PREFIX)) {
+                stored.state.put(key, value);
+              }
+            });
+      }
+      stored.events.add(event);
+      stored.lastUpdateTime = now;
+    }
+    session.lastUpdateTime(now);
+    return Single.just(event);
+  }
+
+  private Shard shard(String userKey) {
+    int h = userKey.hashCode();
+    return shards[(h ^ (h >>> 16)) & shardMask];
+  }
+
+  private static String userKey(String appName, String userId) {
+    return appName + '\0' + userId;
+  }
+
+  // Never creates a map, so lookups for unknown users leave nothing behind.
+  private static Map<String, Stored> sessionsOf(Shard shard, String userKey) {
+    return shard.sessions.getOrDefault(userKey, Map.of());
+  }
+
+  // A copy of the session for the caller; must be called while holding the session's lock.
+  private Session view(Stored stored, Optional<GetSessionConfig> config) {
+    List<Event> events = stored.events;
+    Optional<Instant> after = config.flatMap(GetSessionConfig::afterTimestamp);
+    if (after.isPresent()) {
+      long afterMillis = after.get().toEpochMilli();
+      events =
+          events.stream()
+              .filter(event -> event.timestamp() >= afterMillis)
+              .collect(Collectors.toList());
+    }
+    Optional<Integer> recent = config.flatMap(GetSessionConfig::numRecentEvents);
+    if (recent.isPresent() && events.size() > recent.get()) {
+      events = events.subList(events.size() - recent.get(), events.size());
+    }
+    TieredState state =
+        tiers.view(stored.appName, stored.userId, StateMap.copyOf(stored.state.sessionTier()));
+    return Session.builder(stored.sessionId)
+        .appName(stored.appName)
+        .userId(stored.userId)
+        .state(state)
+        .events(new ArrayList<>(events))
+        .lastUpdateTime(stored.lastUpdateTime)
+        .build();
+  }
+}
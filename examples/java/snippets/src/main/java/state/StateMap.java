@@ -0,0 +1,502 @@
+package state;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * Session state map whose copies share structure, so a copy costs O(1) and an update O(log n)
+ * instead of copying every entry.
+ *
+ * <p>The entries live in an immutable search tree (a treap ordered by key, balanced by key hash).
+ * An update builds a new version that shares everything but the path to the changed key and
+ * swaps it in atomically, which also makes the map safe for concurrent use like a {@code
+ * ConcurrentHashMap}. {@link #snapshot()} returns an independent map that starts from the current
+ * version; later updates to either map are not seen by the other.
+ *
+ * <p>Every update is numbered. {@link #version()} returns the current number and {@link
+ * #changesSince(long)} the keys updated and removed after a given one, so a reader that already
+ * holds an older version only needs to apply the difference. The most recent {@code maxLog}
+ * changes are kept for this.
+ *
+ * <p>Iteration is in key order and sees the version that was current when it started. Like
+ * {@code ConcurrentHashMap}, the map does not accept {@code null} keys or values.
+ */
+public final class StateMap extends AbstractMap<String, Object>
+    implements ConcurrentMap<String, Object> {
+
+  private static final int DEFAULT_MAX_LOG = 1024;
+
+  private final AtomicReference<Version> current;
+  private final int maxLog;
+
+  public StateMap() {
+    this(DEFAULT_MAX_LOG);
+  }
+
+  public StateMap(int maxLog) {
+    this(new Version(null, 0, 0, null, 0, 0), maxLog);
+  }
+
+  private StateMap(Version version, int maxLog) {
+    this.current = new AtomicReference<>(version);
+    this.maxLog = maxLog;
+  }
+
+  /** A map with the entries of {@code map}; O(1) if {@code map} is itself a {@code StateMap}. */
+  public static StateMap copyOf(Map<String, ?> map) {
+    if (map instanceof StateMap) {
+      return ((StateMap) map).snapshot();
+    }
+    StateMap copy = new StateMap();
+    copy.putAll(map);
+    return copy;
+  }
+
+  /**
+   * A map holding {@code entries} at version {@code version}, for rebuilding a map that was
+   * persisted. Changes before that version are not known, so {@link #changesSince} only answers
+   * for {@code version} and later.
+   */
+  static StateMap restore(Map<String, ?> entries, long version) {
+    Node root = null;
+    for (Map.Entry<String, ?> entry : entries.entrySet()) {
+      root = insert(root, entry.getKey(), Objects.requireNonNull(entry.getValue()));
+    }
+    return new StateMap(new Version(root, entries.size(), version, null, 0, version),
+        DEFAULT_MAX_LOG);
+  }
+
+  /** An independent copy of the current version, sharing all entries with this map. */
+  public StateMap snapshot() {
+    return new StateMap(current.get(), maxLog);
+  }
+
+  /** Number of updates made to this map and the maps it was copied from. */
+  public long version() {
+    return current.get().number;
+  }
+
+  /**
+   * Changes made after {@code version}, or empty if they are older than the kept log and the
+   * caller has to start from a full copy instead.
+   */
+  public Optional<Changes> changesSince(long version) {
+    Version now = current.get();
+    if (version < now.logFloor || version > now.number) {
+      return Optional.empty();
+    }
+    Map<String, Object> updated = new LinkedHashMap<>();
+    Set<String> removed = new LinkedHashSet<>();
+    for (Change change = now.log; change != null && change.number > version; change = change.next) {
+      if (!updated.containsKey(change.key) && !removed.contains(change.key)) {
+        if (change.value == null) {
+          removed.add(change.key);
+        } else {
+          updated.put(change.key, change.value);
+        }
+      }
+    }
+    return Optional.of(new Changes(version, now.number, updated, removed));
+  }
+
+  /** Keys set and keys removed between two versions of a {@link StateMap}. */
+  public static final class Changes {
+    private final long fromVersion;
+    private final long toVersion;
+    private final Map<String, Object> updated;
+    private final Set<String> removed;
+
+    private Changes(
+        long fromVersion, long toVersion, Map<String, Object> updated, Set<String> removed) {
+      this.fromVersion = fromVersion;
+      this.toVersion = toVersion;
+      this.updated = Collections.unmodifiableMap(updated);
+      this.removed = Collections.unmodifiableSet(removed);
+    }
+
+    public long fromVersion() {
+      return fromVersion;
+    }
+
+    public long toVersion() {
+      return toVersion;
+    }
+
+    /** Latest value of every key set since {@code fromVersion}. */
+    public Map<String, Object> updated() {
+      return updated;
+    }
+
+    /** Keys removed since {@code fromVersion} and not set again afterwards. */
+    public Set<String> removed() {
+      return removed;
+    }
+
+    public boolean isEmpty() {
+      return updated.isEmpty() && removed.isEmpty();
+    }
+  }
+
+  /**
+   * Puts all entries without numbering them as changes, for layering shared app and user state
+   * over a copy of a session's state while keeping the version of the session's own changes.
+   */
+  void overlay(Map<String, ?> entries) {
+    Version now;
+    Version overlaid;
+    do {
+      now = current.get();
+      Node root = now.root;
+      int size = now.size;
+      for (Map.Entry<String, ?> entry : entries.entrySet()) {
+        if (find(root, entry.getKey()) == null) {
+          size++;
+        }
+        root = insert(root, entry.getKey(), Objects.requireNonNull(entry.getValue()));
+      }
+      overlaid = new Version(root, size, now.number, now.log, now.logLength, now.logFloor);
+    } while (!current.compareAndSet(now, overlaid));
+  }
+
+  @Override
+  public int size() {
+    return current.get().size;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return get(key) != null;
+  }
+
+  @Override
+  public Object get(Object key) {
+    if (!(key instanceof String)) {
+      return null;
+    }
+    Node node = find(current.get().root, (String) key);
+    return node == null ? null : node.value;
+  }
+
+  @Override
+  public Object put(String key, Object value) {
+    Objects.requireNonNull(value);
+    return update(key, old -> value);
+  }
+
+  @Override
+  public Object remove(Object key) {
+    if (!(key instanceof String)) {
+      return null;
+    }
+    return update((String) key, old -> null);
+  }
+
+  @Override
+  public Object putIfAbsent(String key, Object value) {
+    Objects.requireNonNull(value);
+    return update(key, old -> old == null ? value : old);
+  }
+
+  @Override
+  public boolean remove(Object key, Object value) {
+    if (!(key instanceof String) || value == null) {
+      return false;
+    }
+    return value.equals(update((String) key, old -> value.equals(old) ? null : old));
+  }
+
+  @Override
+  public boolean replace(String key, Object oldValue, Object newValue) {
+    Objects.requireNonNull(oldValue);
+    Objects.requireNonNull(newValue);
+    return oldValue.equals(update(key, old -> oldValue.equals(old) ? newValue : old));
+  }
+
+  @Override
+  public Object replace(String key, Object value) {
+    Objects.requireNonNull(value);
+    return update(key, old -> old == null ? null : value);
+  }
+
+  /** Removes all entries. Readers of older versions have to start from a full copy again. */
+  @Override
+  public void clear() {
+    Version now;
+    do {
+      now = current.get();
+    } while (!current.compareAndSet(
+        now, new Version(null, 0, now.number + 1, null, 0, now.number + 1)));
+  }
+
+  @Override
+  public Set<Map.Entry<String, Object>> entrySet() {
+    return new AbstractSet<>() {
+      @Override
+      public Iterator<Map.Entry<String, Object>> iterator() {
+        return new EntryIterator(current.get().root);
+      }
+
+      @Override
+      public int size() {
+        return StateMap.this.size();
+      }
+    };
+  }
+
+  // Sets key to the result of the function applied to its current value (null if absent, null
+  // result removes it) and returns the previous value.
+  private Object update(String key, UnaryOperator<Object> function) {
+    Objects.requireNonNull(key);
+    while (true) {
+      Version now = current.get();
+      Node existing = find(now.root, key);
+      Object old = existing == null ? null : existing.value;
+      Object value = function.apply(old);
+      // Equal values are not a change, so a map rebuilt from JSON numbers its versions the same.
+      if (Objects.equals(value, old)) {
+        return old;
+      }
+      Node root = value == null ? remove(now.root, key) : insert(now.root, key, value);
+      int size = now.size + (old == null ? 1 : 0) - (value == null ? 1 : 0);
+      if (current.compareAndSet(now, now.next(root, size, key, value, maxLog))) {
+        return old;
+      }
+    }
+  }
+
+  /** One immutable version of the map: the tree and the log of the changes that led to it. */
+  private static final class Version {
+    final Node root;
+    final int size;
+    final long number;
+    final Change log;
+    final int logLength;
+    // Changes up to this version are no longer in the log.
+    final long logFloor;
+
+    Version(Node root, int size, long number, Change log, int logLength, long logFloor) {
+      this.root = root;
+      this.size = size;
+      this.number = number;
+      this.log = log;
+      this.logLength = logLength;
+      this.logFloor = logFloor;
+    }
+
+    Version next(Node root, int size, String key, Object value, int maxLog) {
+      Change log = new Change(number + 1, key, value, this.log);
+      int logLength = this.logLength + 1;
+      long logFloor = this.logFloor;
+      // Trimming copies maxLog changes, so it is done once every maxLog updates.
+      if (logLength > 2 * maxLog) {
+        log = trim(log, maxLog);
+        logLength = maxLog;
+        logFloor = number + 1 - maxLog;
+      }
+      return new Version(root, size, number + 1, log, logLength, logFloor);
+    }
+
+    private static Change trim(Change log, int length) {
+      Change[] kept = new Change[length];
+      int count = 0;
+      for (Change change = log; change != null && count < length; change = change.next) {
+        kept[count++] = change;
+      }
+      Change trimmed = null;
+      for (int i = count - 1; i >= 0; i--) {
+        trimmed = new Change(kept[i].number, kept[i].key, kept[i].value, trimmed);
+      }
+      return trimmed;
+    }
+  }
+
+  /** A key set to a value, or removed if the value is null; newest first. */
+  private static final class Change {
+    final long number;
+    final String key;
+    final Object value;
+    final Change next;
+
+    Change(long number, String key, Object value, Change next) {
+      this.number = number;
+      this.key = key;
+      this.value = value;
+      this.next = next;
+    }
+  }
+
+  private static final class Node implements Map.Entry<String, Object> {
+    final String key;
+    final Object value;
+    final int priority;
+    final Node left;
+    final Node right;
+
+    Node(String key, Object value, int priority, Node left, Node right) {
+      this.key = key;
+      this.value = value;
+      this.priority = priority;
+      this.left = left;
+      this.right = right;
+    }
+
+    Node withLeft(Node left) {
+      return new Node(key, value, priority, left, right);
+    }
+
+    Node withRight(Node right) {
+      return new Node(key, value, priority, left, right);
+    }
+
+    @Override
+    public String getKey() {
+      return key;
+    }
+
+    @Override
+    public Object getValue() {
+      return value;
+    }
+
+    @Override
+    public Object setValue(Object value) {
+      throw new UnsupportedOperationException("Use StateMap.put instead.");
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Map.Entry)) {
+        return false;
+      }
+      Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+      return key.equals(entry.getKey()) && value.equals(entry.getValue());
+    }
+
+    @Override
+    public int hashCode() {
+      return key.hashCode() ^ value.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return key + "=" + value;
+    }
+  }
+
+  private static Node find(Node node, String key) {
+    while (node != null) {
+      int cmp = key.compareTo(node.key);
+      if (cmp == 0) {
+        return node;
+      }
+      node = cmp < 0 ? node.left : node.right;
+    }
+    return null;
+  }
+
+  private static Node insert(Node node, String key, Object value) {
+    if (node == null) {
+      return new Node(key, value, priority(key), null, null);
+    }
+    int cmp = key.compareTo(node.key);
+    if (cmp == 0) {
+      return new Node(key, value, node.priority, node.left, node.right);
+    }
+    if (cmp < 0) {
+      Node left = insert(node.left, key, value);
+      // Rotates right to keep the higher priority on top.
+      return left.priority > node.priority
+          ? left.withRight(node.withLeft(left.right))
+          : node.withLeft(left);
+    }
+    Node right = insert(node.right, key, value);
+    return right.priority > node.priority
+        ? right.withLeft(node.withRight(right.left))
+        : node.withRight(right);
+  }
+
+  private static Node remove(Node node, String key) {
+    if (node == null) {
+      return null;
+    }
+    int cmp = key.compareTo(node.key);
+    if (cmp == 0) {
+      return merge(node.left, node.right);
+    }
+    return cmp < 0
+        ? node.withLeft(remove(node.left, key))
+        : node.withRight(remove(node.right, key));
+  }
+
+  // Joins two trees where every key of the left one is smaller than every key of the right one.
+  private static Node merge(Node left, Node right) {
+    if (left == null) {
+      return right;
+    }
+    if (right == null) {
+      return left;
+    }
+    return left.priority > right.priority
+        ? left.withRight(merge(left.right, right))
+        : right.withLeft(merge(left, right.left));
+  }
+
+  // Mixes the key hash so keys with similar hashes still get unrelated priorities.
+  private static int priority(String key) {
+    int h = key.hashCode() * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  private final class EntryIterator implements Iterator<Map.Entry<String, Object>> {
+    private final Deque<Node> stack = new ArrayDeque<>();
+    private Node last;
+
+    EntryIterator(Node root) {
+      pushLeft(root);
+    }
+
+    private void pushLeft(Node node) {
+      for (; node != null; node = node.left) {
+        stack.push(node);
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return !stack.isEmpty();
+    }
+
+    @Override
+    public Map.Entry<String, Object> next() {
+      if (stack.isEmpty()) {
+        throw new NoSuchElementException();
+      }
+      last = stack.pop();
+      pushLeft(last.right);
+      return last;
+    }
+
+    @Override
+    public void remove() {
+      if (last == null) {
+        throw new IllegalStateException();
+      }
+      StateMap.this.remove(last.key);
+      last = null;
+    }
+  }
+}
@@ -0,0 +1,49 @@
+package state;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Storage for the shared state tiers of a session service: one map of {@code app:} keys per app
+ * and one map of {@code user:} keys per user of each app.
+ *
+ * <p>App state is read by every invocation of the app and rarely written, so it is kept in a
+ * {@link StateMap}, whose reads never lock. User state is indexed by app and then by user id, so
+ * finding the state of one user does not depend on how many users there are in other apps.
+ * Session and {@code temp:} state are not stored here; {@link #view} combines all tiers into the
+ * state map of a session.
+ */
+public final class StateTiers {
+
+  private final Map<String, AppTiers> apps = new ConcurrentHashMap<>();
+
+  private static final class AppTiers {
+    final StateMap app = new StateMap();
+    final Map<String, ConcurrentMap<String, Object>> users = new ConcurrentHashMap<>();
+  }
+
+  private AppTiers tiers(String appName) {
+    return apps.computeIfAbsent(appName, name -> new AppTiers());
+  }
+
+  /** The {@code app:} keys of an app. */
+  public ConcurrentMap<String, Object> app(String appName) {
+    return tiers(appName).app;
+  }
+
+  /** The {@code user:} keys of one user of an app. */
+  public ConcurrentMap<String, Object> user(String appName, String userId) {
+    return tiers(appName).users.computeIfAbsent(userId, id -> new ConcurrentHashMap<>());
+  }
+
+  /** The state of a session: the shared tiers, the given session state and a new temp tier. */
+  public TieredState view(
+      String appName, String userId, ConcurrentMap<String, Object> sessionState) {
+    AppTiers tiers = tiers(appName);
+    return new TieredState(
+        tiers.app,
+        tiers.users.computeIfAbsent(userId, id -> new ConcurrentHashMap<>()),
+        sessionState);
+  }
+}
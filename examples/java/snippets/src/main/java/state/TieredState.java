@@ -0,0 +1,154 @@
+package state;
+
+import com.google.adk.sessions.State;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The state of one session as seen by an invocation: a view over four separately stored tiers,
+ * chosen by key prefix.
+ *
+ * <p>{@code app:} keys live in the state shared by every session of the app, {@code user:} keys in
+ * the state shared by every session of the user, {@code temp:} keys in a map that belongs to this
+ * view alone and is dropped with it, and all other keys in the session's own state. Reads and
+ * writes go straight to the tier of the key, so nothing is merged or copied when the view is
+ * created; iteration walks the tiers one after the other. Writes to {@code app:} and {@code user:}
+ * keys are visible to the other sessions of the app or user immediately.
+ */
+public final class TieredState extends AbstractMap<String, Object>
+    implements ConcurrentMap<String, Object> {
+
+  private final ConcurrentMap<String, Object> app;
+  private final ConcurrentMap<String, Object> user;
+  private final ConcurrentMap<String, Object> session;
+  private final ConcurrentMap<String, Object> temp = new ConcurrentHashMap<>();
+
+  TieredState(
+      ConcurrentMap<String, Object> app,
+      ConcurrentMap<String, Object> user,
+      ConcurrentMap<String, Object> session) {
+    this.app = app;
+    this.user = user;
+    this.session = session;
+  }
+
+  /** The keys without a tier prefix, which belong to this session only. */
+  public ConcurrentMap<String, Object> sessionTier() {
+    return session;
+  }
+
+  private ConcurrentMap<String, Object> tier(Object key) {
+    if (key instanceof String) {
+      String name = (String) key;
+      if (name.startsWith(State.APP_PREFIX)) {
+        return app;
+      }
+      if (name.startsWith(State.USER_PREFIX)) {
+        return user;
+      }
+      if (name.startsWith(State.TEMP_PREFIX)) {
+        return temp;
+      }
+    }
+    return session;
+  }
+
+  @Override
+  public Object get(Object key) {
+    return tier(key).get(key);
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return tier(key).containsKey(key);
+  }
+
+  @Override
+  public Object put(String key, Object value) {
+    return tier(key).put(key, value);
+  }
+
+  @Override
+  public Object remove(Object key) {
+    return tier(key).remove(key);
+  }
+
+  @Override
+  public Object putIfAbsent(String key, Object value) {
+    return tier(key).putIfAbsent(key, value);
+  }
+
+  @Override
+  public boolean remove(Object key, Object value) {
+    return tier(key).remove(key, value);
+  }
+
+  @Override
+  public boolean replace(String key, Object oldValue, Object newValue) {
+    return tier(key).replace(key, oldValue, newValue);
+  }
+
+  @Override
+  public Object replace(String key, Object value) {
+    return tier(key).replace(key, value);
+  }
+
+  @Override
+  public int size() {
+    return app.size() + user.size() + session.size() + temp.size();
+  }
+
+  @Override
+  public Set<Map.Entry<String, Object>> entrySet() {
+    return new AbstractSet<>() {
+      @Override
+      public Iterator<Map.Entry<String, Object>> iterator() {
+        return new TierIterator(List.of(app, user, session, temp).iterator());
+      }
+
+      @Override
+      public int size() {
+        return TieredState.this.size();
+      }
+    };
+  }
+
+  /** Iterates the entries of one tier after the other. */
+  private static final class TierIterator implements Iterator<Map.Entry<String, Object>> {
+    private final Iterator<ConcurrentMap<String, Object>> tiers;
+    private Iterator<Map.Entry<String, Object>> entries;
+
+    TierIterator(Iterator<ConcurrentMap<String, Object>> tiers) {
+      this.tiers = tiers;
+      this.entries = tiers.next().entrySet().iterator();
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (!entries.hasNext() && tiers.hasNext()) {
+        entries = tiers.next().entrySet().iterator();
+      }
+      return entries.hasNext();
+    }
+
+    @Override
+    public Map.Entry<String, Object> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return entries.next();
+    }
+
+    @Override
+    public void remove() {
+      entries.remove();
+    }
+  }
+}
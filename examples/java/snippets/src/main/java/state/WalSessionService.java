@@ -0,0 +1,701 @@
+package state;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.adk.events.Event;
+import com.google.adk.sessions.BaseSessionService;
+import com.google.adk.sessions.GetSessionConfig;
+import com.google.adk.sessions.ListEventsResponse;
+import com.google.adk.sessions.ListSessionsResponse;
+import com.google.adk.sessions.Session;
+import com.google.adk.sessions.State;
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.core.Single;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * A session service that keeps sessions in a {@link WriteAheadLog} on local disk, as a drop-in
+ * replacement for {@code InMemorySessionService} that survives restarts.
+ *
+ * <p>{@code appendEvent} serializes the event and copies it into the log, which takes a few
+ * microseconds; with {@code syncAppends} it also waits for the next group commit. The service only
+ * keeps the log position of each session's records in memory, plus the most recently used
+ * sessions up to {@code maxCachedSessions}. Other sessions are rebuilt from the log when they are
+ * read. After {@code snapshotEvery} events a background thread logs a snapshot of the session's
+ * state and the number of events it covers, so a rebuild reads the events but only applies the
+ * state changes made after the snapshot. Once the log has more than {@code maxSegments} segments,
+ * the live sessions in the oldest one are written again as one checkpoint record each, on the
+ * same thread, and the segment is deleted.
+ *
+ * <p>Like {@code InMemorySessionService}, {@code app:} and {@code user:} keys are also kept per
+ * app and per user and merged into every session of that app or user on read, and {@code temp:}
+ * keys are never stored. Session state is kept in {@link StateMap}s, so the copy handed out by
+ * {@code getSession} shares its entries with the stored session instead of copying them. The
+ * version of each state map is logged with it, so {@link #stateVersion} and {@link
+ * #stateChangesSince} give the same answers after the session is rebuilt or the service
+ * restarts. State values must be serializable to JSON.
+ *
+ * <pre>{@code
+ * WalSessionService sessionService =
+ *     WalSessionService.builder(Path.of("sessions")).syncAppends(true).build();
+ * Runner runner = new Runner(agent, APP_NAME, null, sessionService);
+ * }</pre>
+ */
+public final class WalSessionService implements BaseSessionService, Closeable {
+
+  private static final Logger logger = Logger.getLogger(WalSessionService.class.getName());
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final TypeReference<Map<String, Object>> STATE_TYPE = new TypeReference<>() {};
+
+  private static final byte CREATE = 1;
+  private static final byte APPEND = 2;
+  private static final byte SNAPSHOT = 3;
+  private static final byte DELETE = 4;
+  private static final byte SHARED_STATE = 5;
+  private static final byte CHECKPOINT = 6;
+
+  private final WriteAheadLog log;
+  private final boolean syncAppends;
+  private final int snapshotEvery;
+  private final int maxSegments;
+  // Sessions by app and user, then by session id.
+  private final Map<String, Map<String, Entry>> sessions = new ConcurrentHashMap<>();
+  private final Map<String, Map<String, Object>> appState = new ConcurrentHashMap<>();
+  private final Map<String, Map<String, Object>> userState = new ConcurrentHashMap<>();
+  private final Object sharedStateLock = new Object();
+  private final Map<Entry, Stored> cache;
+  private final ExecutorService compactor =
+      Executors.newSingleThreadExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "wal-session-compactor");
+            thread.setDaemon(true);
+            return thread;
+          });
+  private final AtomicBoolean compacting = new AtomicBoolean();
+
+  /** Log positions of one session's records. */
+  private static final class Entry {
+    final String appName;
+    final String userId;
+    final String sessionId;
+    // The CREATE or CHECKPOINT record, then the APPEND records after it, oldest first.
+    long base;
+    long[] events = new long[8];
+    int eventCount;
+    // The latest SNAPSHOT record after base and the number of events before it, if any.
+    long snapshot = -1;
+    int snapshotEvents;
+    int sinceSnapshot;
+    boolean snapshotQueued;
+    Instant lastUpdateTime;
+    boolean deleted;
+
+    Entry(String appName, String userId, String sessionId, Instant lastUpdateTime) {
+      this.appName = appName;
+      this.userId = userId;
+      this.sessionId = sessionId;
+      this.lastUpdateTime = lastUpdateTime;
+    }
+
+    void addEvent(long position) {
+      if (eventCount == events.length) {
+        events = Arrays.copyOf(events, eventCount * 2);
+      }
+      events[eventCount++] = position;
+      sinceSnapshot++;
+    }
+
+    void snapshot(long position) {
+      snapshot = position;
+      snapshotEvents = eventCount;
+      sinceSnapshot = 0;
+    }
+
+    void rebase(long position) {
+      base = position;
+      events = new long[8];
+      eventCount = 0;
+      snapshot = -1;
+      snapshotEvents = 0;
+      sinceSnapshot = 0;
+    }
+  }
+
+  /** The state and events of a session as the service keeps them; never handed out. */
+  private static final class Stored {
+    final StateMap state;
+    final List<Event> events;
+
+    Stored(StateMap state, List<Event> events) {
+      this.state = state;
+      this.events = events;
+    }
+  }
+
+  private WalSessionService(Builder builder) throws IOException {
+    this.log = new WriteAheadLog(builder.directory, builder.segmentBytes, builder.flushInterval);
+    this.syncAppends = builder.syncAppends;
+    this.snapshotEvery = builder.snapshotEvery;
+    this.maxSegments = builder.maxSegments;
+    int maxCachedSessions = builder.maxCachedSessions;
+    this.cache =
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<Entry, Stored> eldest) {
+            return size() > maxCachedSessions;
+          }
+        };
+    log.scan(this::recover);
+  }
+
+  public static Builder builder(Path directory) {
+    return new Builder(directory);
+  }
+
+  @Override
+  public Single<Session> createSession(
+      String appName, String userId, ConcurrentMap<String, Object> state, String sessionId) {
+    return Single.fromCallable(
+        () -> {
+          String id = sessionId != null ? sessionId : UUID.randomUUID().toString();
+          StateMap initialState = state == null ? new StateMap() : StateMap.copyOf(state);
+          initialState.keySet().removeIf(key -> key.startsWith(State.TEMP_PREFIX));
+          Entry entry = new Entry(appName, userId, id, Instant.now());
+          Stored stored = new Stored(initialState, new ArrayList<>());
+          // Readers of the new entry wait until its CREATE record is logged.
+          synchronized (entry) {
+            if (addSession(entry) != null) {
+              throw new IllegalStateException("Session already exists: " + id);
+            }
+            entry.base = log.append(CREATE, appName, userId, id, toJson(stored, false));
+            cache(entry, stored);
+          }
+          updateSharedState(appName, userId, initialState);
+          return view(entry, stored, Optional.empty());
+        });
+  }
+
+  @Override
+  public Maybe<Session> getSession(
+      String appName, String userId, String sessionId, Optional<GetSessionConfig> config) {
+    return Maybe.fromCallable(
+        () -> {
+          Entry entry = sessionsOf(appName, userId).get(sessionId);
+          if (entry == null) {
+            return null;
+          }
+          synchronized (entry) {
+            return entry.deleted ? null : view(entry, materialize(entry, true), config);
+          }
+        });
+  }
+
+  /**
+   * The version of a session's own state, to pass to {@link #stateChangesSince} later. Read it
+   * together with the session, as nothing else changes the session in between.
+   */
+  public Maybe<Long> stateVersion(String appName, String userId, String sessionId) {
+    return Maybe.fromCallable(
+        () -> {
+          Entry entry = sessionsOf(appName, userId).get(sessionId);
+          if (entry == null) {
+            return null;
+          }
+          synchronized (entry) {
+            return entry.deleted ? null : materialize(entry, true).state.version();
+          }
+        });
+  }
+
+  /**
+   * Changes to a session's own state after {@code version}, as returned by {@link #stateVersion}
+   * or by {@link StateMap.Changes#toVersion} of earlier changes; shared app and user state is not
+   * included. Empty if the session does not exist or the changes are too old, in which case the
+   * session has to be read again.
+   */
+  public Maybe<StateMap.Changes> stateChangesSince(
+      String appName, String userId, String sessionId, long version) {
+    return Maybe.fromCallable(
+        () -> {
+          Entry entry = sessionsOf(appName, userId).get(sessionId);
+          if (entry == null) {
+            return null;
+          }
+          synchronized (entry) {
+            if (entry.deleted) {
+              return null;
+            }
+            return materialize(entry, true).state.changesSince(version).orElse(null);
+          }
+        });
+  }
+
+  @Override
+  public Single<ListSessionsResponse> listSessions(String appName, String userId) {
+    return Single.fromCallable(
+        () -> {
+          List<Session> list = new ArrayList<>();
+          for (Entry entry : sessionsOf(appName, userId).values()) {
+            list.add(
+                Session.builder(entry.sessionId)
+                    .appName(appName)
+                    .userId(userId)
+                    .lastUpdateTime(entry.lastUpdateTime)
+                    .build());
+          }
+          return ListSessionsResponse.builder().sessions(list).build();
+        });
+  }
+
+  @Override
+  public Completable deleteSession(String appName, String userId, String sessionId) {
+    return Completable.fromAction(
+        () -> {
+          Entry entry = removeSession(appName, userId, sessionId);
+          if (entry == null) {
+            return;
+          }
+          synchronized (entry) {
+            entry.deleted = true;
+            log.append(DELETE, appName, userId, sessionId, "");
+            synchronized (cache) {
+              cache.remove(entry);
+            }
+          }
+        });
+  }
+
+  @Override
+  public Single<ListEventsResponse> listEvents(String appName, String userId, String sessionId) {
+    return getSession(appName, userId, sessionId, Optional.empty())
+        .map(session -> ListEventsResponse.builder().events(session.events()).build())
+        .defaultIfEmpty(ListEventsResponse.builder().events(List.of()).build());
+  }
+
+  @Override
+  public Single<Event> appendEvent(Session session, Event event) {
+    BaseSessionService.super.appendEvent(session, event);
+    if (event.partial().orElse(false)) {
+      return Single.just(event);
+    }
+    Entry entry = sessionsOf(session.appName(), session.userId()).get(session.id());
+    if (entry == null) {
+      return Single.error(new IllegalArgumentException("Session not found: " + session.id()));
+    }
+    String json = event.toJson();
+    Instant now = Instant.now();
+    synchronized (entry) {
+      if (entry.deleted) {
+        return Single.error(new IllegalArgumentException("Session was deleted: " + session.id()));
+      }
+      entry.addEvent(log.append(APPEND, entry.appName, entry.userId, entry.sessionId, json));
+      entry.lastUpdateTime = now;
+      Stored cached;
+      synchronized (cache) {
+        cached = cache.get(entry);
+      }
+      if (cached != null) {
+        apply(cached, event);
+      }
+      if (entry.sinceSnapshot >= snapshotEvery && !entry.snapshotQueued) {
+        entry.snapshotQueued = true;
+        compactor.execute(() -> snapshot(entry));
+      }
+    }
+    session.lastUpdateTime(now);
+    Map<String, Object> stateDelta = event.actions().stateDelta();
+    if (stateDelta != null) {
+      updateSharedState(entry.appName, entry.userId, stateDelta);
+    }
+    if (log.segmentCount() > maxSegments && compacting.compareAndSet(false, true)) {
+      compactor.execute(this::compact);
+    }
+    if (syncAppends) {
+      return Single.fromCompletionStage(log.flushed()).map(position -> event);
+    }
+    return Single.just(event);
+  }
+
+  @Override
+  public void close() {
+    compactor.shutdown();
+    // A compaction in progress still appends to the log.
+    try {
+      compactor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    log.close();
+  }
+
+  // Never creates a map, so lookups for unknown users leave nothing behind.
+  private Map<String, Entry> sessionsOf(String appName, String userId) {
+    return sessions.getOrDefault(appName + '\0' + userId, Map.of());
+  }
+
+  // Adds the entry unless its user already has a session with the same id, which is returned.
+  // compute() makes this atomic with the removal of an empty per-user map in removeSession.
+  private Entry addSession(Entry entry) {
+    Entry[] existing = new Entry[1];
+    sessions.compute(
+        entry.appName + '\0' + entry.userId,
+        (key, userSessions) -> {
+          Map<String, Entry> map = userSessions != null ? userSessions : new ConcurrentHashMap<>();
+          existing[0] = map.putIfAbsent(entry.sessionId, entry);
+          return map;
+        });
+    return existing[0];
+  }
+
+  private Entry removeSession(String appName, String userId, String sessionId) {
+    Entry[] removed = new Entry[1];
+    sessions.computeIfPresent(
+        appName + '\0' + userId,
+        (key, userSessions) -> {
+          removed[0] = userSessions.remove(sessionId);
+          return userSessions.isEmpty() ? null : userSessions;
+        });
+    return removed[0];
+  }
+
+  private void recover(WriteAheadLog.Record record) {
+    Entry entry = sessionsOf(record.appName, record.userId).get(record.sessionId);
+    Instant time = Instant.ofEpochMilli(record.timeMillis);
+    switch (record.type) {
+      case CREATE:
+        removeSession(record.appName, record.userId, record.sessionId);
+        entry = new Entry(record.appName, record.userId, record.sessionId, time);
+        entry.base = record.position;
+        addSession(entry);
+        break;
+      case APPEND:
+        if (entry != null) {
+          entry.addEvent(record.position);
+          entry.lastUpdateTime = time;
+        }
+        break;
+      case SNAPSHOT:
+        if (entry != null) {
+          entry.snapshot(record.position);
+        }
+        break;
+      case CHECKPOINT:
+        // Compaction may have dropped the session's CREATE record.
+        if (entry == null) {
+          entry = new Entry(record.appName, record.userId, record.sessionId, time);
+          addSession(entry);
+        }
+        entry.rebase(record.position);
+        break;
+      case DELETE:
+        removeSession(record.appName, record.userId, record.sessionId);
+        break;
+      case SHARED_STATE:
+        applySharedState(record.appName, record.userId, fromJson(record.body()));
+        break;
+      default:
+        logger.log(Level.WARNING, "Ignoring a log record of unknown type " + record.type);
+    }
+  }
+
+  // Must be called while holding the entry's lock.
+  private Stored materialize(Entry entry, boolean keep) {
+    synchronized (cache) {
+      Stored cached = cache.get(entry);
+      if (cached != null) {
+        return cached;
+      }
+    }
+    Map<String, Object> base = fromJson(log.read(entry.base).body());
+    List<Event> events = eventsOf(base);
+    StateMap state;
+    int replayFrom;
+    if (entry.snapshot >= 0) {
+      state = stateOf(fromJson(log.read(entry.snapshot).body()));
+      replayFrom = entry.snapshotEvents;
+    } else {
+      state = stateOf(base);
+      replayFrom = 0;
+    }
+    for (int i = 0; i < entry.eventCount; i++) {
+      Event event = Event.fromJson(log.read(entry.events[i]).body());
+      if (i >= replayFrom) {
+        applyState(state, event);
+      }
+      events.add(event);
+    }
+    Stored stored = new Stored(state, events);
+    if (keep) {
+      cache(entry, stored);
+    }
+    return stored;
+  }
+
+  private void cache(Entry entry, Stored stored) {
+    synchronized (cache) {
+      cache.put(entry, stored);
+    }
+  }
+
+  private static void apply(Stored stored, Event event) {
+    applyState(stored.state, event);
+    stored.events.add(event);
+  }
+
+  // Same rules as BaseSessionService.appendEvent.
+  private static void applyState(StateMap state, Event event) {
+    Map<String, Object> stateDelta = event.actions().stateDelta();
+    if (stateDelta != null) {
+      stateDelta.forEach(
+          (key, value) -> {
+            if (!key.startsWith(State.TEMP_PREFIX)) {
+              state.put(key, value);
+            }
+          });
+    }
+  }
+
+  // Runs on the compactor thread. Logs only the state, O(state) rather than O(history), and
+  // rebuilds the session first only if it was evicted in the meantime.
+  private void snapshot(Entry entry) {
+    synchronized (entry) {
+      entry.snapshotQueued = false;
+      if (entry.deleted) {
+        return;
+      }
+      String json = toJson(materialize(entry, false), false);
+      entry.snapshot(log.append(SNAPSHOT, entry.appName, entry.userId, entry.sessionId, json));
+    }
+  }
+
+  // Must be called while holding the entry's lock.
+  private void checkpoint(Entry entry) {
+    String json = toJson(materialize(entry, false), true);
+    entry.rebase(log.append(CHECKPOINT, entry.appName, entry.userId, entry.sessionId, json));
+  }
+
+  private void updateSharedState(String appName, String userId, Map<String, Object> stateDelta) {
+    Map<String, Object> shared = new LinkedHashMap<>();
+    stateDelta.forEach(
+        (key, value) -> {
+          if (key.startsWith(State.APP_PREFIX) || key.startsWith(State.USER_PREFIX)) {
+            shared.put(key, value);
+          }
+        });
+    if (shared.isEmpty()) {
+      return;
+    }
+    // Keeps the order of the log and of the in-memory state the same for concurrent updates.
+    synchronized (sharedStateLock) {
+      log.append(SHARED_STATE, appName, userId, "", toJson(shared));
+      applySharedState(appName, userId, shared);
+    }
+  }
+
+  private void applySharedState(String appName, String userId, Map<String, Object> shared) {
+    shared.forEach(
+        (key, value) -> {
+          if (key.startsWith(State.APP_PREFIX)) {
+            appState.computeIfAbsent(appName, k -> new ConcurrentHashMap<>()).put(key, value);
+          } else {
+            userState
+                .computeIfAbsent(appName + '\0' + userId, k -> new ConcurrentHashMap<>())
+                .put(key, value);
+          }
+        });
+  }
+
+  // A copy of the session for the caller, with the app and user state merged in.
+  private Session view(Entry entry, Stored stored, Optional<GetSessionConfig> config) {
+    List<Event> events = stored.events;
+    Optional<Instant> after = config.flatMap(GetSessionConfig::afterTimestamp);
+    if (after.isPresent()) {
+      long afterMillis = after.get().toEpochMilli();
+      events =
+          events.stream()
+              .filter(event -> event.timestamp() >= afterMillis)
+              .collect(Collectors.toList());
+    }
+    Optional<Integer> recent = config.flatMap(GetSessionConfig::numRecentEvents);
+    if (recent.isPresent() && events.size() > recent.get()) {
+      events = events.subList(events.size() - recent.get(), events.size());
+    }
+    // O(1), plus O(log n) per app and user key.
+    StateMap state = StateMap.copyOf(stored.state);
+    state.overlay(appState.getOrDefault(entry.appName, Map.of()));
+    state.overlay(userState.getOrDefault(entry.appName + '\0' + entry.userId, Map.of()));
+    return Session.builder(entry.sessionId)
+        .appName(entry.appName)
+        .userId(entry.userId)
+        .state(state)
+        .events(new ArrayList<>(events))
+        .lastUpdateTime(entry.lastUpdateTime)
+        .build();
+  }
+
+  // Moves the live sessions out of the oldest segments by checkpointing them, then drops the
+  // segments. A session's base record is its oldest, so only sessions based there need moving.
+  private void compact() {
+    try {
+      while (log.segmentCount() > maxSegments) {
+        int oldest = log.oldestSegment();
+        for (Map<String, Entry> userSessions : sessions.values()) {
+          for (Entry entry : userSessions.values()) {
+            synchronized (entry) {
+              if (!entry.deleted && WriteAheadLog.segment(entry.base) == oldest) {
+                checkpoint(entry);
+              }
+            }
+          }
+        }
+        synchronized (sharedStateLock) {
+          appState.forEach((appName, state) -> logSharedState(appName, "", state));
+          userState.forEach(
+              (key, state) -> {
+                int separator = key.indexOf('\0');
+                logSharedState(key.substring(0, separator), key.substring(separator + 1), state);
+              });
+        }
+        log.deleteSegment(oldest);
+        logger.log(Level.FINE, () -> "Compacted log segment " + oldest);
+      }
+    } catch (IOException | RuntimeException e) {
+      logger.log(Level.WARNING, "Could not compact the session log.", e);
+    } finally {
+      compacting.set(false);
+    }
+  }
+
+  private void logSharedState(String appName, String userId, Map<String, Object> state) {
+    if (!state.isEmpty()) {
+      log.append(SHARED_STATE, appName, userId, "", toJson(state));
+    }
+  }
+
+  private static String toJson(Map<String, Object> state) {
+    try {
+      return MAPPER.writeValueAsString(state);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static Map<String, Object> fromJson(String json) {
+    try {
+      return MAPPER.readValue(json, STATE_TYPE);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // The body of a CREATE, SNAPSHOT or CHECKPOINT record: the state with its version, and for a
+  // checkpoint the events.
+  private static String toJson(Stored stored, boolean withEvents) {
+    Map<String, Object> body = new LinkedHashMap<>();
+    body.put("version", stored.state.version());
+    body.put("state", stored.state);
+    if (withEvents) {
+      body.put("events", stored.events.stream().map(Event::toJson).collect(Collectors.toList()));
+    }
+    return toJson(body);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static StateMap stateOf(Map<String, Object> body) {
+    return StateMap.restore(
+        (Map<String, Object>) body.get("state"), ((Number) body.get("version")).longValue());
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<Event> eventsOf(Map<String, Object> body) {
+    List<Event> events = new ArrayList<>();
+    for (String event : (List<String>) body.getOrDefault("events", List.of())) {
+      events.add(Event.fromJson(event));
+    }
+    return events;
+  }
+
+  /** Builder for {@link WalSessionService}. */
+  public static class Builder {
+    private final Path directory;
+    private int segmentBytes = 64 << 20;
+    private Duration flushInterval = Duration.ofMillis(10);
+    private boolean syncAppends;
+    private int snapshotEvery = 200;
+    private int maxSegments = 8;
+    private int maxCachedSessions = 10_000;
+
+    private Builder(Path directory) {
+      this.directory = directory;
+    }
+
+    /** Size of each log segment; 64 MB by default. */
+    public Builder segmentBytes(int segmentBytes) {
+      this.segmentBytes = segmentBytes;
+      return this;
+    }
+
+    /** How often the log is forced to disk; every 10 ms by default. */
+    public Builder flushInterval(Duration flushInterval) {
+      this.flushInterval = flushInterval;
+      return this;
+    }
+
+    /**
+     * Whether {@code appendEvent} completes only once the event is on disk. Without it, events
+     * survive a crash of the process but the last {@code flushInterval} of them may be lost if
+     * the machine goes down.
+     */
+    public Builder syncAppends(boolean syncAppends) {
+      this.syncAppends = syncAppends;
+      return this;
+    }
+
+    /** Number of events after which a session's state is snapshotted; 200 by default. */
+    public Builder snapshotEvery(int snapshotEvery) {
+      this.snapshotEvery = snapshotEvery;
+      return this;
+    }
+
+    /** Number of log segments kept before the oldest is compacted away; 8 by default. */
+    public Builder maxSegments(int maxSegments) {
+      if (maxSegments < 2) {
+        throw new IllegalArgumentException("maxSegments must be at least 2: " + maxSegments);
+      }
+      this.maxSegments = maxSegments;
+      return this;
+    }
+
+    /** Number of sessions kept in memory; 10,000 by default. */
+    public Builder maxCachedSessions(int maxCachedSessions) {
+      this.maxCachedSessions = maxCachedSessions;
+      return this;
+    }
+
+    public WalSessionService build() throws IOException {
+      return new WalSessionService(this);
+    }
+  }
+}
@@ -0,0 +1,355 @@
+package state;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of small records, stored in fixed-size, memory-mapped segment files.
+ *
+ * <p>Appending copies the record into the mapped segment, so it survives a crash of the process as
+ * soon as {@link #append} returns. A background thread forces the written segments to disk every
+ * {@code flushInterval}; callers that need the record on disk before continuing wait for {@link
+ * #flushed()}, and all callers waiting at the same time share one force (group commit).
+ *
+ * <p>Each record is {@code [length][crc32c][type, time, app, user, session, body]}. The length is
+ * written last, so a record torn by a crash is detected by its checksum and ignored together with
+ * everything after it. A record is addressed by its position: the segment number in the upper 32
+ * bits and the offset in the segment in the lower 32 bits.
+ */
+public final class WriteAheadLog implements Closeable {
+
+  private static final Logger logger = Logger.getLogger(WriteAheadLog.class.getName());
+  private static final int HEADER_BYTES = 8;
+
+  private final Path directory;
+  private final int segmentBytes;
+  private final long flushIntervalNanos;
+  private final ConcurrentSkipListMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+  private final Object lock = new Object();
+  private final List<Segment> unflushed = new ArrayList<>();
+  private final Thread flusher;
+  private Segment current;
+  private CompletableFuture<Long> nextFlush = new CompletableFuture<>();
+  private long appended;
+  private boolean syncRequested;
+  private volatile boolean closed;
+
+  /** One record, with its body read from the segment only when asked for. */
+  public static final class Record {
+    private final ByteBuffer segment;
+    private final int bodyOffset;
+    private final int bodyLength;
+    final long position;
+    final byte type;
+    final long timeMillis;
+    final String appName;
+    final String userId;
+    final String sessionId;
+
+    private Record(
+        ByteBuffer segment,
+        long position,
+        byte type,
+        long timeMillis,
+        String appName,
+        String userId,
+        String sessionId,
+        int bodyOffset,
+        int bodyLength) {
+      this.segment = segment;
+      this.position = position;
+      this.type = type;
+      this.timeMillis = timeMillis;
+      this.appName = appName;
+      this.userId = userId;
+      this.sessionId = sessionId;
+      this.bodyOffset = bodyOffset;
+      this.bodyLength = bodyLength;
+    }
+
+    String body() {
+      byte[] body = new byte[bodyLength];
+      segment.duplicate().position(bodyOffset).get(body);
+      return new String(body, StandardCharsets.UTF_8);
+    }
+  }
+
+  private static final class Segment {
+    final int id;
+    final Path path;
+    final MappedByteBuffer buffer;
+    int writeOffset;
+
+    Segment(int id, Path path, int size) throws IOException {
+      this.id = id;
+      this.path = path;
+      try (FileChannel channel =
+          FileChannel.open(
+              path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+      }
+    }
+  }
+
+  public WriteAheadLog(Path directory, int segmentBytes, Duration flushInterval)
+      throws IOException {
+    this.directory = Files.createDirectories(directory);
+    this.segmentBytes = segmentBytes;
+    this.flushIntervalNanos = flushInterval.toNanos();
+    try (Stream<Path> files = Files.list(directory)) {
+      for (Path path : (Iterable<Path>) files::iterator) {
+        String fileName = path.getFileName().toString();
+        if (fileName.startsWith("wal-") && fileName.endsWith(".log")) {
+          int id = Integer.parseInt(fileName.substring(4, fileName.length() - 4));
+          segments.put(id, new Segment(id, path, (int) Files.size(path)));
+        }
+      }
+    }
+    if (segments.isEmpty()) {
+      current = newSegment(0, segmentBytes);
+    } else {
+      current = segments.lastEntry().getValue();
+      current.writeOffset = scanSegment(current, record -> {});
+      // Clears the header of a torn record so it is not mistaken for a complete one later.
+      if (current.writeOffset + HEADER_BYTES <= current.buffer.capacity()) {
+        current.buffer.putInt(current.writeOffset, 0);
+      }
+    }
+    flusher = new Thread(this::flushLoop, "wal-flusher-" + directory.getFileName());
+    flusher.setDaemon(true);
+    flusher.start();
+  }
+
+  /** Appends a record and returns its position. */
+  public long append(byte type, String appName, String userId, String sessionId, String body) {
+    byte[] payload = encode(type, System.currentTimeMillis(), appName, userId, sessionId, body);
+    CRC32C crc = new CRC32C();
+    crc.update(payload);
+    int recordBytes = HEADER_BYTES + payload.length;
+    synchronized (lock) {
+      if (closed) {
+        throw new IllegalStateException("The log is closed.");
+      }
+      // Keeps room for the zero length that marks the end of the segment.
+      if (current.writeOffset + recordBytes + 4 > current.buffer.capacity()) {
+        unflushed.add(current);
+        current = newSegment(current.id + 1, Math.max(segmentBytes, recordBytes + 4));
+      }
+      int offset = current.writeOffset;
+      ByteBuffer buffer = current.buffer;
+      buffer.putInt(offset + 4, (int) crc.getValue());
+      buffer.put(offset + HEADER_BYTES, payload);
+      buffer.putInt(offset, payload.length);
+      current.writeOffset += recordBytes;
+      appended++;
+      return ((long) current.id << 32) | offset;
+    }
+  }
+
+  /** Completes once every record appended before this call has been forced to disk. */
+  public CompletableFuture<Long> flushed() {
+    synchronized (lock) {
+      syncRequested = true;
+      lock.notifyAll();
+      return nextFlush;
+    }
+  }
+
+  public Record read(long position) {
+    Segment segment = segments.get((int) (position >>> 32));
+    if (segment == null) {
+      throw new IllegalArgumentException("No record at position " + position);
+    }
+    return decode(segment, (int) position);
+  }
+
+  /** Visits every record, oldest first. */
+  public void scan(Consumer<Record> visitor) {
+    for (Segment segment : segments.values()) {
+      scanSegment(segment, visitor);
+    }
+  }
+
+  /** Number of the segment a position is in. */
+  public static int segment(long position) {
+    return (int) (position >>> 32);
+  }
+
+  public int segmentCount() {
+    return segments.size();
+  }
+
+  public int oldestSegment() {
+    return segments.firstKey();
+  }
+
+  /** Deletes a segment that no longer holds live records. The current segment is never deleted. */
+  public void deleteSegment(int id) throws IOException {
+    Segment segment;
+    synchronized (lock) {
+      if (id == current.id) {
+        throw new IllegalArgumentException("Cannot delete the current segment.");
+      }
+      segment = segments.remove(id);
+      unflushed.remove(segment);
+    }
+    if (segment != null) {
+      Files.deleteIfExists(segment.path);
+    }
+  }
+
+  @Override
+  public void close() {
+    synchronized (lock) {
+      closed = true;
+      lock.notifyAll();
+    }
+    try {
+      flusher.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private Segment newSegment(int id, int size) {
+    Path path = directory.resolve(String.format("wal-%010d.log", id));
+    try {
+      Segment segment = new Segment(id, path, size);
+      segments.put(id, segment);
+      return segment;
+    } catch (IOException e) {
+      throw new IllegalStateException("Cannot create log segment " + path, e);
+    }
+  }
+
+  private void flushLoop() {
+    while (true) {
+      CompletableFuture<Long> done;
+      List<Segment> toFlush;
+      long position;
+      synchronized (lock) {
+        long deadline = System.nanoTime() + flushIntervalNanos;
+        while (!closed && !syncRequested) {
+          long remaining = deadline - System.nanoTime();
+          if (remaining <= 0) {
+            break;
+          }
+          try {
+            TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+          }
+        }
+        syncRequested = false;
+        done = nextFlush;
+        nextFlush = new CompletableFuture<>();
+        toFlush = new ArrayList<>(unflushed);
+        toFlush.add(current);
+        unflushed.clear();
+        position = appended;
+      }
+      try {
+        for (Segment segment : toFlush) {
+          segment.buffer.force();
+        }
+        done.complete(position);
+      } catch (RuntimeException e) {
+        logger.log(Level.SEVERE, "Could not flush the write-ahead log.", e);
+        done.completeExceptionally(e);
+      }
+      if (closed) {
+        synchronized (lock) {
+          nextFlush.complete(position);
+        }
+        return;
+      }
+    }
+  }
+
+  // Returns the offset after the last complete record.
+  private static int scanSegment(Segment segment, Consumer<Record> visitor) {
+    ByteBuffer buffer = segment.buffer;
+    int offset = 0;
+    while (offset + HEADER_BYTES <= buffer.capacity()) {
+      int length = buffer.getInt(offset);
+      if (length <= 0 || offset + HEADER_BYTES + length > buffer.capacity()) {
+        break;
+      }
+      int payloadEnd = offset + HEADER_BYTES + length;
+      CRC32C crc = new CRC32C();
+      crc.update(buffer.duplicate().position(offset + HEADER_BYTES).limit(payloadEnd));
+      if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+        logger.log(
+            Level.WARNING,
+            String.format("Ignoring a torn record in %s at %d.", segment.path, offset));
+        break;
+      }
+      visitor.accept(decode(segment, offset));
+      offset += HEADER_BYTES + length;
+    }
+    return offset;
+  }
+
+  private static Record decode(Segment segment, int offset) {
+    ByteBuffer buffer = segment.buffer.duplicate();
+    buffer.position(offset + HEADER_BYTES);
+    byte type = buffer.get();
+    long timeMillis = buffer.getLong();
+    String appName = readString(buffer);
+    String userId = readString(buffer);
+    String sessionId = readString(buffer);
+    int bodyLength = buffer.getInt();
+    return new Record(
+        segment.buffer,
+        ((long) segment.id << 32) | offset,
+        type,
+        timeMillis,
+        appName,
+        userId,
+        sessionId,
+        buffer.position(),
+        bodyLength);
+  }
+
+  private static byte[] encode(
+      byte type, long timeMillis, String appName, String userId, String sessionId, String body) {
+    byte[] app = appName.getBytes(StandardCharsets.UTF_8);
+    byte[] user = userId.getBytes(StandardCharsets.UTF_8);
+    byte[] session = sessionId.getBytes(StandardCharsets.UTF_8);
+    byte[] content = body.getBytes(StandardCharsets.UTF_8);
+    ByteBuffer payload =
+        ByteBuffer.allocate(
+            1 + 8 + 3 * 4 + app.length + user.length + session.length + 4 + content.length);
+    payload.put(type).putLong(timeMillis);
+    for (byte[] string : new byte[][] {app, user, session}) {
+      payload.putInt(string.length).put(string);
+    }
+    payload.putInt(content.length).put(content);
+    return payload.array();
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}